@@ -0,0 +1,151 @@
+import utils.Rng;
+
+//When the next car arrives at each road entrance. A car arrives at an
+//entrance on any one tick with the entrance's rate as its chance, so the
+//number of ticks until the next arrival is geometric and can be drawn in
+//one go, with one random number per arrival instead of one per entrance
+//per tick. Entrances wait in a min-heap by due tick (ties in entrance
+//order), so a tick with no arrivals costs one comparison.
+class ArrivalSchedule {
+    static final long NEVER = Long.MAX_VALUE;
+
+    private final Rng rand;
+    private final double[] rates;
+    //log(1 - rate), the scale of each entrance's gaps
+    private final double[] logMiss;
+    private final long[] due;
+    //entrances ordered by due tick, and where each one is in heap
+    private final int[] heap;
+    private final int[] where;
+
+    ArrivalSchedule(int entrances, Rng rand) {
+        this.rand = rand;
+        rates = new double[entrances];
+        logMiss = new double[entrances];
+        due = new long[entrances];
+        heap = new int[entrances];
+        where = new int[entrances];
+        for (int i = 0; i < entrances; i++) {
+            due[i] = NEVER;
+            heap[i] = i;
+            where[i] = i;
+        }
+    }
+
+    int entrances() {
+        return rates.length;
+    }
+
+    double getRate(int entrance) {
+        return rates[entrance];
+    }
+
+    long getDue(int entrance) {
+        return due[entrance];
+    }
+
+    //The tick of the next arrival at any entrance
+    long nextDue() {
+        return heap.length == 0 ? NEVER : due[heap[0]];
+    }
+
+    //Arrivals from tick on come at the new rate; an unchanged rate keeps
+    //the arrival already drawn, which is just as likely
+    void setRate(int entrance, double rate, long tick) {
+        if (!(rate > 0)) {
+            rate = 0;
+        }
+        if (rate == rates[entrance]) {
+            return;
+        }
+        rates[entrance] = rate;
+        logMiss[entrance] = Math.log1p(-Math.min(rate, 1));
+        reschedule(entrance, draw(entrance, tick));
+    }
+
+    //Put back an entrance's rate and next arrival as getRate and getDue
+    //gave them
+    void restore(int entrance, double rate, long dueTick) {
+        rates[entrance] = rate;
+        logMiss[entrance] = Math.log1p(-Math.min(rate, 1));
+        reschedule(entrance, dueTick);
+    }
+
+    //An entrance with a car arriving on tick, or -1 once there are no
+    //more. Each one returned has its next arrival drawn, after tick.
+    int next(long tick) {
+        if (heap.length == 0 || due[heap[0]] > tick) {
+            return -1;
+        }
+        int entrance = heap[0];
+        reschedule(entrance, draw(entrance, tick + 1));
+        return entrance;
+    }
+
+    //The first tick from tick on with an arrival at entrance
+    private long draw(int entrance, long tick) {
+        double rate = rates[entrance];
+        if (rate == 0) {
+            return NEVER;
+        }
+        if (rate >= 1) {
+            return tick;
+        }
+        //ticks without an arrival before the next, P(gap >= k) = (1-rate)^k
+        double gap = Math.floor(Math.log1p(-rand.nextDouble())
+                / logMiss[entrance]);
+        return gap >= NEVER - tick ? NEVER : tick + (long) gap;
+    }
+
+    private void reschedule(int entrance, long dueTick) {
+        long old = due[entrance];
+        due[entrance] = dueTick;
+        if (dueTick < old) {
+            siftUp(where[entrance]);
+        } else {
+            siftDown(where[entrance]);
+        }
+    }
+
+    private boolean before(int a, int b) {
+        return due[a] < due[b] || (due[a] == due[b] && a < b);
+    }
+
+    private void siftUp(int at) {
+        int entrance = heap[at];
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (!before(entrance, heap[parent])) {
+                break;
+            }
+            move(heap[parent], at);
+            at = parent;
+        }
+        move(entrance, at);
+    }
+
+    private void siftDown(int at) {
+        int entrance = heap[at];
+        int n = heap.length;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], entrance)) {
+                break;
+            }
+            move(heap[child], at);
+            at = child;
+        }
+        move(entrance, at);
+    }
+
+    private void move(int entrance, int at) {
+        heap[at] = entrance;
+        where[entrance] = at;
+    }
+}
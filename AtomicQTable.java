@@ -0,0 +1,82 @@
+
+import interfaces.QTable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+//QTable that many learner threads can update at once without a lock
+//(Hogwild style). Values are kept as float bits in an AtomicIntegerArray
+//indexed directly by key, so reads never block and writes are single
+//volatile stores: two threads updating the same entry in the same
+//instant may lose one update, which q-learning tolerates.
+public class AtomicQTable implements QTable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AtomicIntegerArray values;
+    private final AtomicIntegerArray visits;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public AtomicQTable(int capacity) {
+        values = new AtomicIntegerArray(capacity);
+        visits = new AtomicIntegerArray(capacity);
+    }
+
+    @Override
+    public float get(int key) {
+        return Float.intBitsToFloat(values.get(key));
+    }
+
+    @Override
+    public void put(int key, float value) {
+        values.set(key, Float.floatToRawIntBits(value));
+        if (visits.getAndIncrement(key) == 0) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int visits(int key) {
+        return visits.get(key);
+    }
+
+    @Override
+    public void set(int key, float value, int visits) {
+        values.set(key, Float.floatToRawIntBits(value));
+        //a written key always counts at least one visit
+        if (this.visits.getAndSet(key, Math.max(visits, 1)) == 0) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    //Sees each entry as it is at the moment it is read
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int key = 0; key < values.length(); key++) {
+            int count = visits.get(key);
+            if (count != 0) {
+                visitor.visit(key, get(key), count);
+            }
+        }
+    }
+
+    @Override
+    public QTable copy() {
+        final AtomicQTable copy = new AtomicQTable(values.length());
+        forEach(new EntryVisitor() {
+            public void visit(int key, float value, int visits) {
+                copy.set(key, value, visits);
+            }
+        });
+        return copy;
+    }
+
+    public int capacity() {
+        return values.length();
+    }
+}
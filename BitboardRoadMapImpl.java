@@ -0,0 +1,641 @@
+
+import interfaces.Car;
+import interfaces.CarIndex;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import utils.Coords;
+import utils.Direction;
+import utils.Velocity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Roadmap implementation that stores car occupancy as bit masks, once per
+//row (bit x of row y) and once per column (bit y of column x). Lane scans
+//in the state codes become Long.numberOfTrailingZeros / bitCount over a
+//masked word instead of one carAt() per cell.
+//A map built for a list of lights also remembers, per light, the lane
+//counts its state codes were last worked out from and the version of
+//the map they were taken from; asking again before any car is added or
+//removed (the learner picking an action from the state the simulation
+//just recorded) answers from those. It does the same for whether there
+//is room to cross each light in each direction, which every car queued
+//at a green light asks.
+//Behaves exactly like RoadMapImpl for the same cars and lights.
+public class BitboardRoadMapImpl implements RoadMap {
+    public final int width;
+    public final int height;
+
+    //bit x of carRows[y] and bit y of carCols[x] are set for a car at (x, y)
+    private long[][] carRows;
+    private long[][] carCols;
+    private long[][] roadRows;
+    private List<Coords> roadEntrances;
+    //lights the lane table was built for, or null if there is none
+    private List<TrafficLight> trafficLights;
+    private LaneTable laneTable;
+    //index of the light standing on each square, or -1
+    private int[] lightAt;
+    //bumped by every addCar/removeCar
+    private long version;
+    //per light, the four lanes' distances to the nearest car and queue
+    //lengths (see stateCode, stateCode2), and the version they are from;
+    //the last four of each are scratch space for any other light
+    private int[] distances;
+    private long[] distancesAt;
+    private int[] queues;
+    private long[] queuesAt;
+    //per light and direction, whether a car has room to cross, as
+    //version*2 + 1 if it has, version*2 if not. Tiles stepped on several
+    //threads may fill it in at once; they all work out the same answer.
+    private AtomicLongArray crossings;
+
+    //A map whose getClosestTrafficLight() is a table lookup whenever it
+    //is asked about these same lights
+    BitboardRoadMapImpl(Scenario scenario, List<TrafficLight> trafficLights) {
+        this(scenario);
+        this.trafficLights = trafficLights;
+        this.laneTable = new LaneTable(width, height, trafficLights);
+        this.lightAt = new int[width * height];
+        Arrays.fill(lightAt, -1);
+        for (int k = trafficLights.size() - 1; k >= 0; k--) {
+            int x = trafficLights.get(k).getCoords().getX();
+            int y = trafficLights.get(k).getCoords().getY();
+            if (0 <= x && x < width && 0 <= y && y < height) {
+                lightAt[y * width + x] = k;
+            }
+        }
+        newCaches();
+    }
+
+    BitboardRoadMapImpl(Scenario scenario) {
+        width = scenario.getWidth();
+        height = scenario.getHeight();
+        roadEntrances = scenario.getRoadEntrances();
+        int rowWords = (width + 63) >>> 6;
+        int columnWords = (height + 63) >>> 6;
+        carRows = new long[height][rowWords];
+        carCols = new long[width][columnWords];
+        roadRows = new long[height][rowWords];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                if (scenario.roadAt(i, j)) {
+                    set(roadRows[j], i);
+                }
+            }
+        }
+        newCaches();
+    }
+
+    BitboardRoadMapImpl() {
+        this(Scenario.defaultScenario());
+    }
+
+    private BitboardRoadMapImpl(BitboardRoadMapImpl other) {
+        width = other.width;
+        height = other.height;
+        carRows = copyLines(other.carRows);
+        carCols = copyLines(other.carCols);
+        //roads and lights never change, so copies can share them
+        roadRows = other.roadRows;
+        roadEntrances = other.roadEntrances;
+        trafficLights = other.trafficLights;
+        laneTable = other.laneTable;
+        lightAt = other.lightAt;
+        newCaches();
+    }
+
+    private void newCaches() {
+        int slots = (trafficLights == null ? 0 : trafficLights.size()) + 1;
+        distances = new int[4 * slots];
+        distancesAt = new long[slots];
+        Arrays.fill(distancesAt, -1);
+        queues = new int[4 * slots];
+        queuesAt = new long[slots];
+        Arrays.fill(queuesAt, -1);
+        crossings = new AtomicLongArray(4 * slots);
+        for (int i = 0; i < crossings.length(); i++) {
+            crossings.set(i, -1);
+        }
+    }
+
+    @Override
+    public void print(List<Car> cars, List<TrafficLight> trafficLights) {
+        char[][] newGrid = new char[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                newGrid[y][x] =
+                    test(carRows[y], x) ? 'C' :
+                    test(roadRows[y], x) ? ' ' :
+                        'x';
+            }
+        }
+        for (Car car : cars) {
+            int x = car.getCoords().getX(), y = car.getCoords().getY();
+            int dx = car.getDirection().getXSpeed();
+            int dy = car.getDirection().getYSpeed();
+            newGrid[y][x] =
+                dx == 0 ? dy < 0 ? '^' : 'v' :
+                dy == 0 ? dx < 0 ? '<' : '>' :
+                    '6';
+        }
+        for (TrafficLight light : trafficLights) {
+            int x = light.getCoords().getX(), y = light.getCoords().getY();
+            if (light.getDelay() != 0) {
+                newGrid[y][x] = 'o';
+            } else {
+                newGrid[y][x] = light.horizontalGreen() ? '>' : 'v';
+            }
+        }
+
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                System.out.print(newGrid[i][j]);
+            }
+            System.out.println();
+        }
+        System.out.println();
+    }
+
+    //See RoadMapImpl.stateCode - distance (0-8, 9 if none) to the
+    //closest car on each approach, taking the nearer of the two lanes
+    @Override
+    public int stateCode(TrafficLight t) {
+        int hash = t.horizontalGreen() ? 1 : 0;
+        int k = measureDistances(t);
+
+        hash += 10*(Math.min(distances[k], distances[k + 1]));
+        hash += 100*(Math.min(distances[k + 2], distances[k + 3]));
+
+        return hash;
+    }
+
+    //See RoadMapImpl.stateCode2 - number of cars queued back from the
+    //light on each road, capped at 9
+    @Override
+    public int stateCode2(TrafficLight t) {
+        int hash = t.horizontalGreen() ? 1 : 0;
+        int k = measureQueues(t);
+
+        int v1 = queues[k];
+        int v2 = queues[k + 1];
+        hash += 10*(Math.min(v1+v2, 9));
+
+        //RoadMapImpl does not reset its counter between the two
+        //horizontal lanes, so h2 includes h1
+        int h1 = queues[k + 2];
+        int h2 = h1 + queues[k + 3];
+        hash += 100*(Math.min(h1+h2, 9));
+
+        return hash;
+    }
+
+    //See RoadMapImpl.stateCode3 - stateCode2 plus whether the car at the
+    //front of each road has room to cross
+    @Override
+    public int stateCode3(TrafficLight t, List<Car> cars) {
+        return stateCode3(t, new CarListIndex(cars));
+    }
+
+    @Override
+    public int stateCode3(TrafficLight t, CarIndex cars) {
+        int x = t.getCoords().getX(), y = t.getCoords().getY();
+        int hash = t.horizontalGreen() ? 1 : 0;
+
+        boolean room =
+                roomForCarAt(x - 1, y - 2, cars, t) &&
+                roomForCarAt(x + 1, y + 2, cars, t);
+        int k = measureQueues(t);
+        int v1 = queues[k];
+        int v2 = queues[k + 1];
+        hash += 10*(Math.min(v1+v2, 9));
+        if (room) {
+            hash += 1000;
+        }
+
+        room =
+                roomForCarAt(x - 2, y + 1, cars, t) &&
+                roomForCarAt(x + 2, y - 1, cars, t);
+        int h1 = queues[k + 2];
+        int h2 = queues[k + 3];
+        hash += 100*(Math.min(h1+h2, 9));
+        if (room) {
+            hash += 10000;
+        }
+        return hash;
+    }
+
+    //Index of t among the lights this map was built for, or -1
+    private int lightIndex(TrafficLight t) {
+        if (lightAt == null) {
+            return -1;
+        }
+        int x = t.getCoords().getX(), y = t.getCoords().getY();
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return -1;
+        }
+        int k = lightAt[y * width + x];
+        return k >= 0 && trafficLights.get(k) == t ? k : -1;
+    }
+
+    //Work out the distances (0-8, 9 if none) to the nearest car on
+    //light t's four lanes - down the column left of it, up the column
+    //right of it, back along the row below it and on along the row above
+    //it - unless they are already known for this version of the map.
+    //Returns where in distances they start.
+    private int measureDistances(TrafficLight t) {
+        int k = lightIndex(t);
+        int i = 4 * (k >= 0 ? k : distancesAt.length - 1);
+        if (k >= 0 && distancesAt[k] == version) {
+            return i;
+        }
+        int x = t.getCoords().getX(), y = t.getCoords().getY();
+        distances[i] = distanceDown(column(x - 1), y - 2, 9);
+        distances[i + 1] = distanceUp(column(x + 1), y + 2, 9);
+        distances[i + 2] = distanceDown(row(y + 1), x - 2, 9);
+        distances[i + 3] = distanceUp(row(y - 1), x + 2, 9);
+        if (k >= 0) {
+            distancesAt[k] = version;
+        }
+        return i;
+    }
+
+    //The same for the number of cars queued back from the light on each
+    //of the four lanes, kept in queues
+    private int measureQueues(TrafficLight t) {
+        int k = lightIndex(t);
+        int i = 4 * (k >= 0 ? k : queuesAt.length - 1);
+        if (k >= 0 && queuesAt[k] == version) {
+            return i;
+        }
+        int x = t.getCoords().getX(), y = t.getCoords().getY();
+        queues[i] = runDown(column(x - 1), y - 2);
+        queues[i + 1] = runUp(column(x + 1), y + 2);
+        queues[i + 2] = runDown(row(y + 1), x - 2);
+        queues[i + 3] = runUp(row(y - 1), x + 2);
+        if (k >= 0) {
+            queuesAt[k] = version;
+        }
+        return i;
+    }
+
+    //Whether the car on (x, y), if there is one, has room to cross
+    private boolean roomForCarAt(int x, int y, CarIndex cars,
+            TrafficLight t) {
+        if (carAt(x, y)) {
+            int direction = cars.directionAt(x, y);
+            if (direction != Direction.NONE) {
+                return roomToCrossIntersection(x, y, direction, t);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean roomToCrossIntersection(
+            Coords position, Velocity direction, TrafficLight l) {
+        return roomToCrossIntersection(position.getX(), position.getY(),
+                Direction.of(direction), l);
+    }
+
+    @Override
+    public boolean roomToCrossIntersection(
+            int x, int y, int direction, TrafficLight l) {
+        //every car waiting at the same light in the same direction gets
+        //the same answer, so it is only counted once per version
+        int k = direction == Direction.NONE ? -1 : lightIndex(l);
+        if (k < 0) {
+            return roomToCross(direction, l);
+        }
+        int i = 4*k + direction;
+        long crossing = crossings.get(i);
+        if (crossing >>> 1 == version) {
+            return (crossing & 1) != 0;
+        }
+        boolean room = roomToCross(direction, l);
+        crossings.lazySet(i, version << 1 | (room ? 1 : 0));
+        return room;
+    }
+
+    private boolean roomToCross(int direction, TrafficLight l) {
+        int sx = stopX(direction, l), sy = stopY(direction, l);
+        int dx = Direction.dx(direction), dy = Direction.dy(direction);
+        //count cars in the twenty squares from the start of the
+        //intersection; everything off the grid is blank
+        int cars;
+        if (dy == 0) {
+            cars = countRange(row(sy), sx, sx + 19*dx);
+        } else {
+            cars = countRange(column(sx), sy, sy + 19*dy);
+        }
+        //4 tiles - three for intersection, one for car on other side
+        return 20 - cars >= 4;
+    }
+
+    @Override
+    public TrafficLight getClosestTrafficLight(
+            Car car, List<TrafficLight> trafficLights
+    ) {
+        return getClosestTrafficLight(car.getX(), car.getY(),
+                car.getDirectionCode(), trafficLights);
+    }
+
+    @Override
+    public TrafficLight getClosestTrafficLight(
+            int x, int y, int direction, List<TrafficLight> trafficLights
+    ) {
+        //The first light whose stop square lies ahead of the car in its
+        //lane, or the first light if there is none
+        if (trafficLights == this.trafficLights && laneTable != null) {
+            int light = laneTable.nextLight(x, y, direction);
+            return trafficLights.get(light < 0 ? 0 : light);
+        }
+        int dx = Direction.dx(direction), dy = Direction.dy(direction);
+        TrafficLight closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        for (TrafficLight t : trafficLights) {
+            int sx = stopX(direction, t), sy = stopY(direction, t);
+            if (sx < 0 || sy < 0 || sx >= width || sy >= height) {
+                continue;
+            }
+            int distance;
+            if (dy == 0 && sy == y) {
+                distance = (sx - x)*dx;
+            } else if (dx == 0 && sx == x) {
+                distance = (sy - y)*dy;
+            } else {
+                continue;
+            }
+            if (distance >= 0 && distance < closestDistance) {
+                closest = t;
+                closestDistance = distance;
+            }
+        }
+        return closest != null ? closest : trafficLights.get(0);
+    }
+
+    @Override
+    public List<Coords> getRoadEntrances() {
+        return roadEntrances;
+    }
+
+    @Override
+    public Velocity getStartingVelocity(Coords roadEntrance) {
+        int x = roadEntrance.getX(), y = roadEntrance.getY();
+        return new Velocity(
+            y == 0 || y == height - 1 ? 0 : x == 0 ? 1 : -1,
+            x == 0 || x == width - 1 ? 0 : y == 0 ? 1 : -1
+        );
+    }
+
+    @Override
+    public RoadMap copyMap() {
+        return new BitboardRoadMapImpl(this);
+    }
+
+    @Override
+    public void addCars(List<Car> cars) {
+        for (Car c : cars) {
+            addCar(c.getCoords());
+        }
+    }
+
+    @Override
+    public void addCar(Coords coords) {
+        addCar(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public void addCar(int x, int y) {
+        set(carRows[y], x);
+        set(carCols[x], y);
+        version++;
+    }
+
+    @Override
+    public void removeCar(Coords coords) {
+        removeCar(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public void removeCar(int x, int y) {
+        if (0 <= x && x < width && 0 <= y && y < height) {
+            clear(carRows[y], x);
+            clear(carCols[x], y);
+            version++;
+        }
+    }
+
+    @Override
+    public boolean nextNonCarSquareIsTrafficLight(
+            Coords start,
+            Velocity direction,
+            TrafficLight trafficLight) {
+        return nextNonCarSquareIsTrafficLight(start.getX(), start.getY(),
+                Direction.of(direction), trafficLight);
+    }
+
+    @Override
+    public boolean nextNonCarSquareIsTrafficLight(
+            int x, int y, int direction, TrafficLight trafficLight) {
+        //true when the light's stop square is ahead in the same lane and
+        //every square in between holds a car
+        int sx = stopX(direction, trafficLight);
+        int sy = stopY(direction, trafficLight);
+        int dx = Direction.dx(direction), dy = Direction.dy(direction);
+        int distance;
+        int between;
+        if (dy == 0 && sy == y) {
+            distance = (sx - x)*dx;
+            between = countRange(row(y), x + dx, sx - dx);
+        } else if (dx == 0 && sx == x) {
+            distance = (sy - y)*dy;
+            between = countRange(column(x), y + dy, sy - dy);
+        } else {
+            return false;
+        }
+        return distance == 1 || (distance > 1 && between == distance - 1);
+    }
+
+    @Override
+    public boolean carAt(Coords coords) {
+        return carAt(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public boolean carAt(int x, int y) {
+        return
+            0 <= x && x < width &&
+            0 <= y && y < height &&
+            test(carRows[y], x);
+    }
+
+    @Override
+    public boolean roadAt(Coords coords) {
+        return roadAt(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public boolean roadAt(int x, int y) {
+        return
+            0 <= x && x < width &&
+            0 <= y && y < height &&
+            test(roadRows[y], x) && !test(carRows[y], x);
+    }
+
+    //Stop square for a car heading in direction towards the light - the
+    //same square as RoadMapImpl.trafficLightCoords, or 0 for NONE
+    private static int stopX(int direction, TrafficLight l) {
+        int x = l.getCoords().getX();
+        switch (direction) {
+            case Direction.RIGHT:
+            case Direction.DOWN:
+                return x - 1;
+            case Direction.LEFT:
+            case Direction.UP:
+                return x + 1;
+            default:
+                return 0;
+        }
+    }
+
+    private static int stopY(int direction, TrafficLight l) {
+        int y = l.getCoords().getY();
+        switch (direction) {
+            case Direction.RIGHT:
+            case Direction.UP:
+                return y + 1;
+            case Direction.LEFT:
+            case Direction.DOWN:
+                return y - 1;
+            default:
+                return 0;
+        }
+    }
+
+    private long[] row(int y) {
+        return 0 <= y && y < height ? carRows[y] : null;
+    }
+
+    private long[] column(int x) {
+        return 0 <= x && x < width ? carCols[x] : null;
+    }
+
+    //The helpers below work on a whole line of words. Bits past the
+    //map's edge are never set, so they read as empty road just like the
+    //squares off the map do in RoadMapImpl.
+
+    //Squares from p back towards 0 until the first car, at most n
+    private static int distanceDown(long[] line, int p, int n) {
+        int car = line == null ? -1 : highestBit(line,
+                Math.max(p - n + 1, 0), Math.min(p, bits(line) - 1), true);
+        return car < 0 ? n : p - car;
+    }
+
+    //Squares from p on towards the end of the line until the first car,
+    //at most n
+    private static int distanceUp(long[] line, int p, int n) {
+        int car = line == null ? -1 : lowestBit(line,
+                Math.max(p, 0), Math.min(p + n - 1, bits(line) - 1), true);
+        return car < 0 ? n : car - p;
+    }
+
+    //Number of consecutive cars from p back towards 0
+    private static int runDown(long[] line, int p) {
+        if (line == null || p < 0 || p >= bits(line)) {
+            return 0;
+        }
+        return p - highestBit(line, 0, p, false);
+    }
+
+    //Number of consecutive cars from p on towards the end of the line
+    private static int runUp(long[] line, int p) {
+        if (line == null || p < 0 || p >= bits(line)) {
+            return 0;
+        }
+        int gap = lowestBit(line, p, bits(line) - 1, false);
+        return (gap < 0 ? bits(line) : gap) - p;
+    }
+
+    //Number of cars between a and b inclusive, in either order
+    private static int countRange(long[] line, int a, int b) {
+        if (line == null) {
+            return 0;
+        }
+        int lo = Math.max(Math.min(a, b), 0);
+        int hi = Math.min(Math.max(a, b), bits(line) - 1);
+        if (lo > hi) {
+            return 0;
+        }
+        int count = 0;
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            count += Long.bitCount(line[w] & mask(w, lo, hi));
+        }
+        return count;
+    }
+
+    private static int bits(long[] line) {
+        return line.length << 6;
+    }
+
+    //Lowest index in [lo, hi] whose bit equals set, or -1
+    private static int lowestBit(long[] line, int lo, int hi, boolean set) {
+        if (lo > hi) {
+            return -1;
+        }
+        for (int w = lo >>> 6; w <= hi >>> 6; w++) {
+            long word = (set ? line[w] : ~line[w]) & mask(w, lo, hi);
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    //Highest index in [lo, hi] whose bit equals set, or -1
+    private static int highestBit(long[] line, int lo, int hi, boolean set) {
+        if (lo > hi) {
+            return -1;
+        }
+        for (int w = hi >>> 6; w >= lo >>> 6; w--) {
+            long word = (set ? line[w] : ~line[w]) & mask(w, lo, hi);
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    //Bits of word w that fall inside [lo, hi]
+    private static long mask(int w, int lo, int hi) {
+        long m = -1L;
+        if (w == lo >>> 6) {
+            m &= -1L << (lo & 63);
+        }
+        if (w == hi >>> 6) {
+            m &= -1L >>> (63 - (hi & 63));
+        }
+        return m;
+    }
+
+    private static boolean test(long[] line, int i) {
+        return (line[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] line, int i) {
+        line[i >>> 6] |= 1L << i;
+    }
+
+    private static void clear(long[] line, int i) {
+        line[i >>> 6] &= ~(1L << i);
+    }
+
+    private long[][] copyLines(long[][] lines) {
+        long[][] copy = new long[lines.length][];
+        for (int i = 0; i < lines.length; i++) {
+            copy[i] = lines[i].clone();
+        }
+        return copy;
+    }
+}
@@ -2,6 +2,7 @@ import interfaces.Car;
 import interfaces.RoadMap;
 import interfaces.TrafficLight;
 import utils.Coords;
+import utils.Direction;
 import utils.Velocity;
 
 import java.util.List;
@@ -45,4 +46,16 @@ public class CarImpl implements Car {
     public Velocity getVelocity() {
         return velocity;
     }
+
+    public int getX() {
+        return position.getX();
+    }
+
+    public int getY() {
+        return position.getY();
+    }
+
+    public int getDirectionCode() {
+        return Direction.of(direction);
+    }
 }
@@ -0,0 +1,27 @@
+import interfaces.Car;
+import interfaces.CarIndex;
+import utils.Direction;
+
+import java.util.List;
+
+//CarIndex over a plain list of cars, for callers that have no index of
+//their own: each lookup walks the list and finds the first car on the
+//square.
+public class CarListIndex implements CarIndex {
+    private final List<Car> cars;
+
+    CarListIndex(List<Car> cars) {
+        this.cars = cars;
+    }
+
+    @Override
+    public int directionAt(int x, int y) {
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            if (car.getX() == x && car.getY() == y) {
+                return car.getDirectionCode();
+            }
+        }
+        return Direction.NONE;
+    }
+}
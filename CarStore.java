@@ -0,0 +1,313 @@
+
+import interfaces.Car;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import utils.Coords;
+import utils.Direction;
+import utils.Velocity;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+//The cars on the map, stored as parallel primitive arrays (one slot per
+//car) rather than one CarImpl with its Coords and Velocity objects each.
+//Cars that drive off the map are swap-removed, so slot numbers are only
+//stable until the next step() or clear().
+//A store can also keep a shared index of which square each of its cars
+//is on up to date (see indexInto); it only ever writes the squares its
+//own cars are on, or have just left.
+public class CarStore {
+    private int[] x = new int[64];
+    private int[] y = new int[64];
+    private int[] dx = new int[64];
+    private int[] dy = new int[64];
+    private boolean[] stopped = new boolean[64];
+    private int[] spawnTick = new int[64];
+    private int size;
+
+    //squares[y*width + x] is id(slot) of the car at (x, y), or 0 for
+    //none; null when this store is not indexed
+    private int[] squares;
+    private int width;
+    private int height;
+    //ids are tile + tiles*slot + 1, unique across the stores sharing
+    //squares
+    private int tile;
+    private int tiles;
+
+    public int size() {
+        return size;
+    }
+
+    public int getX(int slot) {
+        return x[slot];
+    }
+
+    public int getY(int slot) {
+        return y[slot];
+    }
+
+    //the direction the car would like to be going
+    public int getDirectionX(int slot) {
+        return dx[slot];
+    }
+
+    public int getDirectionY(int slot) {
+        return dy[slot];
+    }
+
+    //true if the car did not move on the last step
+    public boolean isStopped(int slot) {
+        return stopped[slot];
+    }
+
+    public int getSpawnTick(int slot) {
+        return spawnTick[slot];
+    }
+
+    //Add a moving car at (x, y) heading in direction (dx, dy)
+    public void add(int x, int y, int dx, int dy, int tick) {
+        add(x, y, dx, dy, false, tick);
+    }
+
+    //Add a car exactly as read back from the getters
+    public void add(int x, int y, int dx, int dy, boolean stopped, int tick) {
+        if (size == this.x.length) {
+            grow();
+        }
+        this.x[size] = x;
+        this.y[size] = y;
+        this.dx[size] = dx;
+        this.dy[size] = dy;
+        this.stopped[size] = stopped;
+        this.spawnTick[size] = tick;
+        size++;
+        index(size - 1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size && squares != null; i++) {
+            unindex(i);
+        }
+        size = 0;
+    }
+
+    //Keep squares, for a width x height map, up to date with where this
+    //store's cars are, as store number tile of tiles sharing it
+    void indexInto(int[] squares, int width, int height, int tile,
+            int tiles) {
+        this.squares = squares;
+        this.width = width;
+        this.height = height;
+        this.tile = tile;
+        this.tiles = tiles;
+        for (int i = 0; i < size; i++) {
+            index(i);
+        }
+    }
+
+    //The store and slot an id in squares stands for
+    static int tileOf(int id, int tiles) {
+        return (id - 1) % tiles;
+    }
+
+    static int slotOf(int id, int tiles) {
+        return (id - 1) / tiles;
+    }
+
+    private int id(int slot) {
+        return tile + tiles * slot + 1;
+    }
+
+    private int square(int slot) {
+        int cx = x[slot], cy = y[slot];
+        return 0 <= cx && cx < width && 0 <= cy && cy < height ?
+                cy * width + cx : -1;
+    }
+
+    //Record that the car in slot is on its square
+    private void index(int slot) {
+        if (squares != null) {
+            int square = square(slot);
+            if (square >= 0) {
+                squares[square] = id(slot);
+            }
+        }
+    }
+
+    //Forget the car in slot, unless another car has been recorded on
+    //its square since
+    private void unindex(int slot) {
+        if (squares != null) {
+            int square = square(slot);
+            if (square >= 0 && squares[square] == id(slot)) {
+                squares[square] = 0;
+            }
+        }
+    }
+
+    //Moves every car one tick on map (see CarImpl.move), drops the cars
+    //that leave the width x height map, and returns how many of the
+    //remaining cars are stopped - all in a single pass over the arrays.
+    public int step(RoadMap map, List<TrafficLight> lights,
+            int width, int height) {
+        return step(map, lights, 0, 0, width, height, width, height, null);
+    }
+
+    //Same as step(), for a store that holds only the cars of the tile
+    //x0 <= x < x1, y0 <= y < y1 (see CarTiles). A car that drives out of
+    //the tile but stays on the map is moved to handoff[d] instead, where
+    //d is the utils.Direction it left in.
+    //Cars move at most one square a tick, so they only ever leave into
+    //a neighbouring tile.
+    int step(RoadMap map, List<TrafficLight> lights, int x0, int y0,
+            int x1, int y1, int width, int height, CarStore[] handoff) {
+        int carsStopped = 0;
+        int i = 0;
+        while (i < size) {
+            int direction = Direction.of(dx[i], dy[i]);
+            TrafficLight light =
+                    map.getClosestTrafficLight(x[i], y[i], direction, lights);
+            unindex(i);
+            move(i, direction, light, map);
+            int cx = x[i], cy = y[i];
+            if (cx < x0 || cx >= x1 || cy < y0 || cy >= y1) {
+                if (cx >= 0 && cx < width && cy >= 0 && cy < height) {
+                    handoff[direction].add(
+                            cx, cy, dx[i], dy[i], false, spawnTick[i]);
+                }
+                remove(i);
+                continue;
+            }
+            index(i);
+            if (stopped[i]) {
+                carsStopped++;
+            }
+            i++;
+        }
+        return carsStopped;
+    }
+
+    //Add every car in other to this store, in slot order, and empty other
+    void takeAll(CarStore other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.x[i], other.y[i], other.dx[i], other.dy[i],
+                    other.stopped[i], other.spawnTick[i]);
+        }
+        other.clear();
+    }
+
+    //Cars in slot order, as Car objects. Each call to get() creates a
+    //view of that slot; views are not valid across step() or clear().
+    public List<Car> asList() {
+        return new AbstractList<Car>() {
+            @Override
+            public Car get(int slot) {
+                if (slot >= size) {
+                    throw new IndexOutOfBoundsException("slot " + slot);
+                }
+                return new View().at(slot);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    //Same rule as CarImpl.move
+    private void move(int slot, int direction, TrafficLight l, RoadMap m) {
+        boolean greenLight =
+                l.getDelay() == 0 &&
+                l.horizontalGreen() == (dy[slot] == 0) &&
+                m.roomToCrossIntersection(x[slot], y[slot], direction, l);
+        boolean stop =
+                !greenLight &&
+                m.nextNonCarSquareIsTrafficLight(
+                        x[slot], y[slot], direction, l);
+        stopped[slot] = stop;
+        if (!stop) {
+            x[slot] += dx[slot];
+            y[slot] += dy[slot];
+        }
+    }
+
+    //The car in slot must already be unindexed
+    private void remove(int slot) {
+        int last = --size;
+        if (squares != null && last != slot) {
+            int square = square(last);
+            if (square >= 0 && squares[square] == id(last)) {
+                squares[square] = id(slot);
+            }
+        }
+        x[slot] = x[last];
+        y[slot] = y[last];
+        dx[slot] = dx[last];
+        dy[slot] = dy[last];
+        stopped[slot] = stopped[last];
+        spawnTick[slot] = spawnTick[last];
+    }
+
+    private void grow() {
+        int capacity = 2 * x.length;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        stopped = Arrays.copyOf(stopped, capacity);
+        spawnTick = Arrays.copyOf(spawnTick, capacity);
+    }
+
+    //A Car backed by one slot of the store
+    private class View implements Car {
+        private int slot;
+        private final Coords position = new Coords(0, 0);
+        private final Velocity direction = new Velocity(0, 0);
+        private final Velocity velocity = new Velocity(0, 0);
+
+        private View at(int slot) {
+            this.slot = slot;
+            position.setX(x[slot]);
+            position.setY(y[slot]);
+            direction.setXSpeed(dx[slot]);
+            direction.setYSpeed(dy[slot]);
+            velocity.setXSpeed(stopped[slot] ? 0 : dx[slot]);
+            velocity.setYSpeed(stopped[slot] ? 0 : dy[slot]);
+            return this;
+        }
+
+        public void move(TrafficLight l, RoadMap m) {
+            unindex(slot);
+            CarStore.this.move(slot, Direction.of(dx[slot], dy[slot]), l, m);
+            index(slot);
+            at(slot);
+        }
+
+        public Coords getCoords() {
+            return position;
+        }
+
+        public Velocity getDirection() {
+            return direction;
+        }
+
+        public Velocity getVelocity() {
+            return velocity;
+        }
+
+        public int getX() {
+            return x[slot];
+        }
+
+        public int getY() {
+            return y[slot];
+        }
+
+        public int getDirectionCode() {
+            return Direction.of(dx[slot], dy[slot]);
+        }
+    }
+}
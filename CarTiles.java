@@ -0,0 +1,227 @@
+
+import interfaces.Car;
+import interfaces.CarIndex;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import utils.Direction;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//The cars on the map split into square tiles, each with its own CarStore,
+//so that the tiles can be stepped on different threads.
+//A tick moves the cars of every tile at once, reading only the map as it
+//was at the start of the tick. A car that drives into a neighbouring tile
+//is left in a handoff buffer, one per tile and direction, and once every
+//tile has moved (the first barrier) each tile takes in the cars from its
+//neighbours' buffers, always in the same order. The cars, and the order
+//of their slots, are therefore the same whatever the number of threads.
+//The tiles also keep one index of which car is on each square, each tile
+//writing only its own squares, so directionAt() is a single lookup.
+public class CarTiles implements CarIndex {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final CarStore[] tiles;
+    //handoff[t][d] - cars that left tile t in utils.Direction d this tick
+    private final CarStore[][] handoff;
+    //id (see CarStore.indexInto) of the car on each square, or 0
+    private final int[] squares;
+    //null to step the tiles one after another on the calling thread
+    private final ForkJoinPool pool;
+    private final List<Callable<Integer>> moves = new ArrayList<Callable<Integer>>();
+    private final List<Callable<Integer>> arrivals = new ArrayList<Callable<Integer>>();
+
+    //map and lights of the tick being stepped, for the tasks
+    private RoadMap map;
+    private List<TrafficLight> lights;
+
+    //One tile covering the whole map - the same as a single CarStore
+    CarTiles(int width, int height) {
+        this(width, height, Math.max(width, height), null);
+    }
+
+    CarTiles(int width, int height, int tileSize, ForkJoinPool pool) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.pool = pool;
+        columns = (width + tileSize - 1) / tileSize;
+        rows = (height + tileSize - 1) / tileSize;
+        tiles = new CarStore[columns * rows];
+        handoff = new CarStore[tiles.length][4];
+        squares = new int[width * height];
+        for (int t = 0; t < tiles.length; t++) {
+            tiles[t] = new CarStore();
+            tiles[t].indexInto(squares, width, height, t, tiles.length);
+            for (int d = 0; d < 4; d++) {
+                handoff[t][d] = new CarStore();
+            }
+        }
+        for (int t = 0; t < tiles.length; t++) {
+            final int tile = t;
+            moves.add(new Callable<Integer>() {
+                public Integer call() {
+                    return move(tile);
+                }
+            });
+            arrivals.add(new Callable<Integer>() {
+                public Integer call() {
+                    arrive(tile);
+                    return 0;
+                }
+            });
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (CarStore tile : tiles) {
+            size += tile.size();
+        }
+        return size;
+    }
+
+    //Number of tiles; tile(t) for t below it are the stores themselves
+    public int tiles() {
+        return tiles.length;
+    }
+
+    public CarStore tile(int t) {
+        return tiles[t];
+    }
+
+    //Add a car to the tile it is on (see CarStore.add)
+    public void add(int x, int y, int dx, int dy, int tick) {
+        add(x, y, dx, dy, false, tick);
+    }
+
+    public void add(int x, int y, int dx, int dy, boolean stopped, int tick) {
+        tiles[tileAt(x, y)].add(x, y, dx, dy, stopped, tick);
+    }
+
+    //Direction of the car on (x, y), or Direction.NONE if there is none
+    @Override
+    public int directionAt(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return Direction.NONE;
+        }
+        int id = squares[y * width + x];
+        if (id == 0) {
+            return Direction.NONE;
+        }
+        CarStore tile = tiles[CarStore.tileOf(id, tiles.length)];
+        int slot = CarStore.slotOf(id, tiles.length);
+        return Direction.of(tile.getDirectionX(slot), tile.getDirectionY(slot));
+    }
+
+    public void clear() {
+        for (CarStore tile : tiles) {
+            tile.clear();
+        }
+    }
+
+    //Moves every car one tick on map, dropping those that leave it, and
+    //returns how many of the cars left are stopped (see CarStore.step)
+    public int step(RoadMap map, List<TrafficLight> lights) {
+        if (tiles.length == 1) {
+            return tiles[0].step(map, lights, width, height);
+        }
+        this.map = map;
+        this.lights = lights;
+        int carsStopped = 0;
+        if (pool == null) {
+            for (int t = 0; t < tiles.length; t++) {
+                carsStopped += move(t);
+            }
+            for (int t = 0; t < tiles.length; t++) {
+                arrive(t);
+            }
+        } else {
+            carsStopped = sum(pool.invokeAll(moves));
+            sum(pool.invokeAll(arrivals));
+        }
+        this.map = null;
+        this.lights = null;
+        return carsStopped;
+    }
+
+    //Cars tile by tile, in slot order within each tile, as Car objects.
+    //Like CarStore.asList(), not valid across step() or clear().
+    public List<Car> asList() {
+        final List<List<Car>> lists = new ArrayList<List<Car>>();
+        final int[] start = new int[tiles.length + 1];
+        for (int t = 0; t < tiles.length; t++) {
+            lists.add(tiles[t].asList());
+            start[t + 1] = start[t] + tiles[t].size();
+        }
+        return new AbstractList<Car>() {
+            @Override
+            public Car get(int i) {
+                if (i < 0 || i >= start[tiles.length]) {
+                    throw new IndexOutOfBoundsException("car " + i);
+                }
+                int t = 0;
+                while (start[t + 1] <= i) {
+                    t++;
+                }
+                return lists.get(t).get(i - start[t]);
+            }
+
+            @Override
+            public int size() {
+                return start[tiles.length];
+            }
+        };
+    }
+
+    private int move(int t) {
+        int x0 = (t % columns) * tileSize, y0 = (t / columns) * tileSize;
+        return tiles[t].step(map, lights, x0, y0,
+                Math.min(x0 + tileSize, width), Math.min(y0 + tileSize, height),
+                width, height, handoff[t]);
+    }
+
+    //Take in the cars that drove into tile t from each side
+    private void arrive(int t) {
+        int column = t % columns, row = t / columns;
+        if (column > 0) {
+            tiles[t].takeAll(handoff[t - 1][Direction.RIGHT]);
+        }
+        if (column < columns - 1) {
+            tiles[t].takeAll(handoff[t + 1][Direction.LEFT]);
+        }
+        if (row > 0) {
+            tiles[t].takeAll(handoff[t - columns][Direction.DOWN]);
+        }
+        if (row < rows - 1) {
+            tiles[t].takeAll(handoff[t + columns][Direction.UP]);
+        }
+    }
+
+    private int tileAt(int x, int y) {
+        return (y / tileSize) * columns + x / tileSize;
+    }
+
+    private static int sum(List<Future<Integer>> results) {
+        int sum = 0;
+        try {
+            for (Future<Integer> result : results) {
+                sum += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Step interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Tile step failed", e.getCause());
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,80 @@
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//Decides when training is due a checkpoint - every everyTicks ticks or
+//every everyMillis milliseconds, whichever comes first (0 turns either
+//off) - and writes it on a background thread so the simulation does not
+//wait for the disk. While the previous checkpoint is still being
+//written no new one is due, so no snapshot is taken only to be dropped.
+public class CheckpointWriter {
+    private final File file;
+    private final int everyTicks;
+    private final long everyMillis;
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "checkpoint-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private int lastTick;
+    private long lastMillis = System.currentTimeMillis();
+
+    CheckpointWriter(File file, int everyTicks, long everyMillis) {
+        this.file = file;
+        this.everyTicks = everyTicks;
+        this.everyMillis = everyMillis;
+    }
+
+    public boolean due(int tick) {
+        if (writing.get()) {
+            return false;
+        }
+        if (everyTicks > 0 && tick - lastTick >= everyTicks) {
+            return true;
+        }
+        return everyMillis > 0
+                && System.currentTimeMillis() - lastMillis >= everyMillis;
+    }
+
+    //checkpoint must already be a snapshot (see TrainingCheckpoint.take),
+    //taken when due() said so
+    public void write(final TrainingCheckpoint checkpoint) {
+        lastTick = checkpoint.getTimeRan();
+        lastMillis = System.currentTimeMillis();
+        if (!writing.compareAndSet(false, true)) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                try {
+                    checkpoint.save(file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    writing.set(false);
+                }
+            }
+        });
+    }
+
+    //Training finished: wait for any write in progress, then remove the
+    //checkpoint so the next run starts afresh
+    public void finish() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,76 @@
+
+import interfaces.QTable;
+
+//QTable backed by a flat float array indexed directly by key.
+//Used when the largest key is small (stateCode keys are < 2000),
+//so a lookup is a single array read with no boxing or hashing.
+public class DenseQTable implements QTable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final float[] values;
+    private final int[] visits;
+    private int size;
+
+    public DenseQTable(int capacity) {
+        values = new float[capacity];
+        visits = new int[capacity];
+    }
+
+    private DenseQTable(DenseQTable other) {
+        values = other.values.clone();
+        visits = other.visits.clone();
+        size = other.size;
+    }
+
+    @Override
+    public float get(int key) {
+        return values[key];
+    }
+
+    @Override
+    public void put(int key, float value) {
+        values[key] = value;
+        if (visits[key]++ == 0) {
+            size++;
+        }
+    }
+
+    @Override
+    public int visits(int key) {
+        return visits[key];
+    }
+
+    @Override
+    public void set(int key, float value, int visits) {
+        values[key] = value;
+        if (this.visits[key] == 0) {
+            size++;
+        }
+        //a written key always counts at least one visit
+        this.visits[key] = Math.max(visits, 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int key = 0; key < values.length; key++) {
+            if (visits[key] != 0) {
+                visitor.visit(key, values[key], visits[key]);
+            }
+        }
+    }
+
+    @Override
+    public QTable copy() {
+        return new DenseQTable(this);
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+}
@@ -0,0 +1,252 @@
+import utils.JsonReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+//Turns HERE traffic flow snapshots (<unix seconds>.json files, as saved
+//by fetch_stats.js) into an IntensityTrace of the jam factors at the
+//eight road entrances, one row per snapshot in time order. Each file is
+//streamed through a JsonReader rather than read into memory, and only
+//RWS[0].RW[].FIS[0].FI[] is looked at: an FI whose TMC location code and
+//direction are one of the entrances' sets that entrance's jam factor to
+//the JF of its first CF, later FIs winning, as in script.js.
+//
+//  java [-Dcsv=dailytime.csv] FlowIngest dailytime.flow wednesday/ ...
+//
+//The inputs may be snapshot files or directories of them. With -Dcsv
+//the same table is also written in script.js's csv format.
+public class FlowIngest {
+    //TMC location codes and queue directions of entrances A to H
+    static final int[] LOCATIONS = {1916, 8720, 2358, 2096, 613, 2542,
+            1434, 1434};
+    static final String[] DIRECTIONS = {"-", "-", "+", "-", "-", "-", "-",
+            "+"};
+    static final String[] NAMES = {"A", "B", "C", "D", "E", "F", "G", "H"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java [-Dcsv=file] FlowIngest "
+                    + "<trace> <snapshot file or directory>...");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            File input = new File(args[i]);
+            File[] listed = input.listFiles();
+            if (listed == null) {
+                files.add(input);
+                continue;
+            }
+            for (File file : listed) {
+                if (file.getName().endsWith(".json")) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(timeOf(a), timeOf(b));
+            }
+        });
+
+        long start = System.nanoTime();
+        long[] times = new long[files.size()];
+        float[][] jamFactors = new float[LOCATIONS.length][files.size()];
+        float[] row = new float[LOCATIONS.length];
+        for (int r = 0; r < files.size(); r++) {
+            File file = files.get(r);
+            times[r] = timeOf(file);
+            read(file, row);
+            for (int c = 0; c < row.length; c++) {
+                jamFactors[c][r] = row[c];
+            }
+        }
+        File out = new File(args[0]);
+        IntensityTrace.save(out, times, jamFactors);
+        System.out.println("Wrote " + files.size() + " snapshots to " + out
+                + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+        String csv = System.getProperty("csv");
+        if (csv != null) {
+            writeCsv(new File(csv), IntensityTrace.load(out));
+            System.out.println("Wrote " + csv);
+        }
+    }
+
+    static long timeOf(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        try {
+            return Long.parseLong(dot < 0 ? name : name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(file
+                    + " is not named after its unix time");
+        }
+    }
+
+    //Fills row with the entrances' jam factors in one snapshot, NaN for
+    //those it has no reading of
+    static void read(File file, float[] row) throws IOException {
+        Arrays.fill(row, Float.NaN);
+        JsonReader in = new JsonReader(new FileInputStream(file));
+        try {
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("RWS")) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginArray();
+                if (in.hasNext()) {
+                    readRoadWays(in, row);
+                }
+                while (in.hasNext()) {
+                    in.skipValue();
+                }
+                in.endArray();
+            }
+            in.endObject();
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    //One RWS element: {"RW": [{"FIS": [{"FI": [...]}, ...]}, ...]}
+    private static void readRoadWays(JsonReader in, float[] row)
+            throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!in.nextName().equals("RW")) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    if (!in.nextName().equals("FIS")) {
+                        in.skipValue();
+                        continue;
+                    }
+                    in.beginArray();
+                    if (in.hasNext()) {
+                        readFlowItems(in, row);
+                    }
+                    while (in.hasNext()) {
+                        in.skipValue();
+                    }
+                    in.endArray();
+                }
+                in.endObject();
+            }
+            in.endArray();
+        }
+        in.endObject();
+    }
+
+    //One FIS element: {"FI": [{"TMC": {...}, "CF": [{...}, ...]}, ...]}
+    private static void readFlowItems(JsonReader in, float[] row)
+            throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!in.nextName().equals("FI")) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                readFlowItem(in, row);
+            }
+            in.endArray();
+        }
+        in.endObject();
+    }
+
+    private static void readFlowItem(JsonReader in, float[] row)
+            throws IOException {
+        int location = -1;
+        String direction = null;
+        float jamFactor = Float.NaN;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("TMC")) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String field = in.nextName();
+                    if (field.equals("PC")) {
+                        location = in.nextInt();
+                    } else if (field.equals("QD")) {
+                        direction = in.nextString();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+            } else if (name.equals("CF")) {
+                in.beginArray();
+                if (in.hasNext()) {
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        if (in.nextName().equals("JF")) {
+                            jamFactor = (float) in.nextDouble();
+                        } else {
+                            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                }
+                while (in.hasNext()) {
+                    in.skipValue();
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        for (int c = 0; c < LOCATIONS.length; c++) {
+            if (LOCATIONS[c] == location && DIRECTIONS[c].equals(direction)) {
+                row[c] = jamFactor;
+            }
+        }
+    }
+
+    //The trace as script.js would have written it, missing readings
+    //left empty
+    static void writeCsv(File file, IntensityTrace trace) throws IOException {
+        PrintWriter out = new PrintWriter(file, "UTF-8");
+        try {
+            StringBuilder line = new StringBuilder("\"Time\"");
+            for (String name : NAMES) {
+                line.append(",\"").append(name).append('"');
+            }
+            out.print(line);
+            for (int r = 0; r < trace.rows(); r++) {
+                line.setLength(0);
+                line.append("\n\"").append(trace.clock(r)).append('"');
+                for (int c = 0; c < trace.columns(); c++) {
+                    line.append(',');
+                    float jamFactor = trace.jamFactor(r, c);
+                    if (jamFactor == (int) jamFactor) {
+                        line.append((int) jamFactor);
+                    } else if (!Float.isNaN(jamFactor)) {
+                        line.append(jamFactor);
+                    }
+                }
+                out.print(line);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
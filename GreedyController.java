@@ -0,0 +1,44 @@
+
+import interfaces.LightController;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+
+import java.util.List;
+
+//Switches the lights from a compiled GreedyPolicy - the choices a
+//LearningModuleImpl makes when it does not explore, at the cost of one
+//state code and one bit test per light. It never learns, so simulations
+//using it are given no learning module.
+public class GreedyController implements LightController {
+    private final GreedyPolicy policy;
+
+    GreedyController(GreedyPolicy policy) {
+        this.policy = policy;
+    }
+
+    //true if light t, as seen on map r, should be switched now
+    public boolean decide(RoadMap r, TrafficLight t) {
+        return t.getDelay() == 0 && policy.switchLight(r.stateCode(t));
+    }
+
+    //Same bookkeeping as LearningModuleImpl.updateTrafficLights
+    @Override
+    public void updateTrafficLights(
+            RoadMap r, List<TrafficLight> trafficLights, int timeRan,
+            boolean[] switched) {
+        for (int i = 0; i < trafficLights.size(); i++) {
+            TrafficLight t = trafficLights.get(i);
+            boolean a = decide(r, t);
+            switched[i] = t.getDelay() == 1;
+            if (a) {
+                t.switchLight();
+            } else {
+                t.clock();
+            }
+        }
+    }
+
+    public GreedyPolicy getPolicy() {
+        return policy;
+    }
+}
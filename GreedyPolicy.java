@@ -0,0 +1,133 @@
+
+import interfaces.QTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+//A trained q-table boiled down to what a deployed controller needs: for
+//every state code, whether the greedy action is to switch the light. One
+//bit per state, so a decision is a single array read.
+//States are RoadMap.stateCode codes - the ones LearningModuleImpl's
+//getAction looks up, whichever reward function trained the table.
+//
+//The exported file is big-endian:
+//
+//  int   magic ("QPOL")
+//  int   version
+//  int   state encoder (the reward function the table was trained with)
+//  int   state count n
+//  long[(n + 63) / 64] switch bits, state s in bit s % 64 of word s / 64
+public class GreedyPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int MAGIC = 0x51504F4C;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * 4;
+
+    private final int stateEncoder;
+    private final int states;
+    private final long[] switchBits;
+
+    private GreedyPolicy(int stateEncoder, int states, long[] switchBits) {
+        this.stateEncoder = stateEncoder;
+        this.states = states;
+        this.switchBits = switchBits;
+    }
+
+    //The choices learningModule makes when it does not explore: switch
+    //when the switch q-value beats both staying and getAction's floor
+    static GreedyPolicy compile(int stateEncoder,
+            LearningModuleImpl learningModule) {
+        QTable table = learningModule.getQTable();
+        int states = learningModule.getActionPosition();
+        long[] switchBits = new long[(states + 63) >>> 6];
+        for (int state = 0; state < states; state++) {
+            float stay = table.get(state);
+            float change = table.get(state + states);
+            if (change > Math.max(stay, -100)) {
+                switchBits[state >>> 6] |= 1L << state;
+            }
+        }
+        return new GreedyPolicy(stateEncoder, states, switchBits);
+    }
+
+    //Whether to switch a light whose state code is state; states the
+    //table never covered keep the light as it is
+    public boolean switchLight(int state) {
+        return state >= 0 && state < states
+                && (switchBits[state >>> 6] & (1L << state)) != 0;
+    }
+
+    //Replaces file in one rename, as QTableCheckpoint.save does
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stateEncoder);
+            out.writeInt(states);
+            for (long word : switchBits) {
+                out.writeLong(word);
+            }
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static GreedyPolicy load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, file.toString());
+        } finally {
+            raf.close();
+        }
+    }
+
+    static GreedyPolicy read(ByteBuffer buffer, String name)
+            throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(name + " is not a policy file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(name + " has policy version "
+                    + version + ", expected " + VERSION);
+        }
+        int stateEncoder = buffer.getInt();
+        int states = buffer.getInt();
+        long[] switchBits = new long[(Math.max(states, 0) + 63) >>> 6];
+        if (states < 0 || buffer.remaining() != 8L * switchBits.length) {
+            throw new IOException(name + " has the wrong length");
+        }
+        buffer.asLongBuffer().get(switchBits);
+        buffer.position(buffer.position() + 8 * switchBits.length);
+        return new GreedyPolicy(stateEncoder, states, switchBits);
+    }
+
+    //The reward function the table was trained with
+    public int getStateEncoder() {
+        return stateEncoder;
+    }
+
+    public int getStates() {
+        return states;
+    }
+}
@@ -0,0 +1,138 @@
+
+import interfaces.QTable;
+
+import java.util.Arrays;
+
+//QTable backed by an open-addressing int -> float hash map with linear
+//probing. Used when keys are spread over a large range (stateCode3 keys
+//with actionPosition = 100000) but only a few thousand are ever visited.
+public class HashQTable implements QTable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int EMPTY = -1;
+    private static final float MAX_LOAD = 0.5f;
+
+    private int[] keys;
+    private float[] values;
+    private int[] visits;
+    private int size;
+
+    public HashQTable() {
+        this(1024);
+    }
+
+    public HashQTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(
+                Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new int[capacity];
+        values = new float[capacity];
+        visits = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private HashQTable(HashQTable other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        visits = other.visits.clone();
+        size = other.size;
+    }
+
+    @Override
+    public float get(int key) {
+        int i = slot(key);
+        return keys[i] == key ? values[i] : 0;
+    }
+
+    @Override
+    public void put(int key, float value) {
+        int i = slot(key);
+        values[i] = value;
+        visits[i]++;
+        if (keys[i] == EMPTY) {
+            added(i, key);
+        }
+    }
+
+    @Override
+    public int visits(int key) {
+        int i = slot(key);
+        return keys[i] == key ? visits[i] : 0;
+    }
+
+    @Override
+    public void set(int key, float value, int visits) {
+        int i = slot(key);
+        values[i] = value;
+        //a written key always counts at least one visit
+        this.visits[i] = Math.max(visits, 1);
+        if (keys[i] == EMPTY) {
+            added(i, key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(keys[i], values[i], visits[i]);
+            }
+        }
+    }
+
+    @Override
+    public QTable copy() {
+        return new HashQTable(this);
+    }
+
+    //Slot holding key, or the empty slot where it would go
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void added(int i, int key) {
+        keys[i] = key;
+        if (++size > keys.length * MAX_LOAD) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        float[] oldValues = values;
+        int[] oldVisits = visits;
+        keys = new int[capacity];
+        values = new float[capacity];
+        visits = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = mix(oldKeys[j]) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                visits[i] = oldVisits[j];
+            }
+        }
+    }
+
+    //State codes are decimal digit packs, so the low bits are poorly
+    //distributed; scramble them before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
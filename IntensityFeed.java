@@ -0,0 +1,214 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+//Live traffic for a running simulation: watches a drop directory for
+//HERE flow snapshots (<unix seconds>.json, as FlowIngest reads them) and
+//publishes the entrances' jam factors from the newest one. Only files
+//that arrive are parsed, never the whole directory again, and a snapshot
+//older than the one published is ignored.
+//
+//The feed thread swaps the published Reading whole, so the simulation
+//thread can check latest() every tick and never sees half an update.
+//Writers should write under another name (say .1498023001.json.tmp) and
+//rename into place; a file that cannot be parsed yet is skipped and
+//tried again when it is next modified.
+public class IntensityFeed {
+    //one snapshot's worth of jam factors, never changed once published
+    public static final class Reading {
+        private final long time;
+        private final float[] jamFactors;
+        private final String[] labels;
+
+        Reading(long time, float[] jamFactors) {
+            this.time = time;
+            this.jamFactors = jamFactors;
+            this.labels = new String[jamFactors.length];
+            for (int i = 0; i < jamFactors.length; i++) {
+                labels[i] = Float.isNaN(jamFactors[i])
+                        ? "" : Float.toString(jamFactors[i]);
+            }
+        }
+
+        //Unix seconds the snapshot was taken at
+        public long getTime() {
+            return time;
+        }
+
+        //Entrance column's jam factor, NaN if it had no reading
+        public float jamFactor(int column) {
+            return jamFactors[column];
+        }
+
+        public int columns() {
+            return jamFactors.length;
+        }
+
+        //The jam factors as text, for the Viewer
+        public String[] getLabels() {
+            return labels;
+        }
+    }
+
+    private final File directory;
+    private volatile Reading latest;
+    private volatile int updates;
+    private WatchService watcher;
+    private Thread thread;
+
+    IntensityFeed(File directory) {
+        this.directory = directory;
+    }
+
+    //Publishes the newest snapshot already in the directory, then
+    //watches it for more on a daemon thread
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        directory.toPath().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        rescan();
+        thread = new Thread(new Runnable() {
+            public void run() {
+                watch();
+            }
+        }, "intensity-feed");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException ignored) {}
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    //The newest snapshot seen so far, or null before the first
+    public Reading latest() {
+        return latest;
+    }
+
+    //How many snapshots have been published
+    public int getUpdates() {
+        return updates;
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                return;
+            }
+            List<File> arrived = new ArrayList<File>();
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                File file = new File(directory,
+                        ((Path) event.context()).toString());
+                if (isSnapshot(file) && !arrived.contains(file)) {
+                    arrived.add(file);
+                }
+            }
+            if (overflow) {
+                rescan();
+            } else {
+                offerNewest(arrived);
+            }
+            if (!key.reset()) {
+                //the directory has gone
+                return;
+            }
+        }
+    }
+
+    //Events were lost, so look at the directory itself
+    private void rescan() {
+        List<File> files = new ArrayList<File>();
+        File[] listed = directory.listFiles();
+        if (listed != null) {
+            for (File file : listed) {
+                if (isSnapshot(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        offerNewest(files);
+    }
+
+    //Publishes the newest of files that parses and is newer than the
+    //current reading
+    private void offerNewest(List<File> files) {
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(FlowIngest.timeOf(b),
+                        FlowIngest.timeOf(a));
+            }
+        });
+        Reading current = latest;
+        for (File file : files) {
+            long time = FlowIngest.timeOf(file);
+            if (current != null && time <= current.getTime()) {
+                return;
+            }
+            float[] jamFactors = new float[FlowIngest.LOCATIONS.length];
+            try {
+                FlowIngest.read(file, jamFactors);
+            } catch (IOException e) {
+                //not completely written yet, or gone already
+                continue;
+            }
+            latest = new Reading(time, jamFactors);
+            updates++;
+            return;
+        }
+    }
+
+    private static boolean isSnapshot(File file) {
+        String name = file.getName();
+        if (!name.endsWith(".json")) {
+            return false;
+        }
+        for (int i = 0; i < name.length() - 5; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return name.length() > 5;
+    }
+}
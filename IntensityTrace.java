@@ -0,0 +1,145 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+//Binary file holding a traffic trace: the jam factor of each road
+//entrance at a series of times, column by column. Everything is
+//big-endian.
+//
+//  int      magic ("FLOW")
+//  int      version
+//  int      row count n (one per snapshot, oldest first)
+//  int      column count m (one per entrance)
+//  long[n]  snapshot times, in unix seconds
+//  float[n] jam factors of entrance 0, then entrance 1, ... up to m - 1
+//
+//A jam factor of NaN means there was no reading for that entrance.
+//Loading maps the file and reads values straight out of the mapping,
+//so opening a trace of any length costs no parsing at all.
+public class IntensityTrace {
+    static final int MAGIC = 0x464C4F57;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * 4;
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final int columns;
+
+    private IntensityTrace(ByteBuffer buffer, int rows, int columns) {
+        this.buffer = buffer;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    //Writes times.length rows, jamFactors[c][row] being entrance c's
+    public static void save(File file, long[] times, float[][] jamFactors)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(times.length);
+            out.writeInt(jamFactors.length);
+            for (long time : times) {
+                out.writeLong(time);
+            }
+            for (float[] column : jamFactors) {
+                if (column.length != times.length) {
+                    throw new IllegalArgumentException(
+                            "Columns must have one value per time");
+                }
+                for (float value : column) {
+                    out.writeFloat(value);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    //Whether file starts like a trace, so callers can tell traces from
+    //the csv files that hold the same data
+    public static boolean isTrace(File file) {
+        if (!file.isFile() || file.length() < HEADER_BYTES) {
+            return false;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                return raf.readInt() == MAGIC;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static IntensityTrace load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES
+                    || buffer.getInt(0) != MAGIC) {
+                throw new IOException(file + " is not an intensity trace");
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException(file + " has trace version "
+                        + version + ", expected " + VERSION);
+            }
+            int rows = buffer.getInt(8);
+            int columns = buffer.getInt(12);
+            if (rows < 0 || columns < 0 || buffer.remaining()
+                    != HEADER_BYTES + 8L * rows + 4L * rows * columns) {
+                throw new IOException(file + " is truncated");
+            }
+            return new IntensityTrace(buffer, rows, columns);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    //Unix seconds of the row'th snapshot
+    public long time(int row) {
+        return buffer.getLong(HEADER_BYTES + 8 * row);
+    }
+
+    public float jamFactor(int row, int column) {
+        return buffer.getFloat(HEADER_BYTES + 8 * rows
+                + 4 * (column * rows + row));
+    }
+
+    //The row's time of day on this machine's clock, as H:MM:SS
+    public String clock(int row) {
+        return clock(time(row));
+    }
+
+    static String clock(long seconds) {
+        LocalTime t = Instant.ofEpochSecond(seconds)
+                .atZone(ZoneId.systemDefault()).toLocalTime();
+        return t.getHour() + ":" + (t.getMinute() < 10 ? "0" : "")
+                + t.getMinute() + ":" + (t.getSecond() < 10 ? "0" : "")
+                + t.getSecond();
+    }
+}
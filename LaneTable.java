@@ -0,0 +1,79 @@
+
+import interfaces.TrafficLight;
+import utils.Direction;
+
+import java.util.Arrays;
+import java.util.List;
+
+//Precomputed answer to "which light does a car at this square, heading
+//this way, drive towards next?" for every square and direction of a
+//width x height map. Built once from the traffic lights, so the
+//per-car lookup is a single array read instead of a walk along the road.
+public class LaneTable {
+    private final int width;
+    private final int height;
+    //index of the next light, or -1, per (square, direction)
+    private final int[] nextLight;
+
+    LaneTable(int width, int height, List<TrafficLight> trafficLights) {
+        this.width = width;
+        this.height = height;
+        nextLight = new int[width * height * 4];
+        Arrays.fill(nextLight, -1);
+
+        //which light (lowest index wins) has its stop square here
+        int[] stopsAt = new int[width * height];
+        for (int d = 0; d < 4; d++) {
+            Arrays.fill(stopsAt, -1);
+            for (int k = trafficLights.size() - 1; k >= 0; k--) {
+                TrafficLight t = trafficLights.get(k);
+                int sx = stopX(d, t), sy = stopY(d, t);
+                if (0 <= sx && sx < width && 0 <= sy && sy < height) {
+                    stopsAt[sy * width + sx] = k;
+                }
+            }
+            //walk every lane against the direction of travel, carrying
+            //the last stop square seen
+            boolean horizontal = Direction.horizontal(d);
+            int lanes = horizontal ? height : width;
+            int length = horizontal ? width : height;
+            for (int lane = 0; lane < lanes; lane++) {
+                int light = -1;
+                for (int step = 0; step < length; step++) {
+                    int along = Direction.dx(d) + Direction.dy(d) > 0 ?
+                            length - 1 - step : step;
+                    int x = horizontal ? along : lane;
+                    int y = horizontal ? lane : along;
+                    int cell = y * width + x;
+                    if (stopsAt[cell] >= 0) {
+                        light = stopsAt[cell];
+                    }
+                    nextLight[cell * 4 + d] = light;
+                }
+            }
+        }
+    }
+
+    //Index in the light list of the first light whose stop square is at
+    //or ahead of (x, y) when heading in direction (a utils.Direction),
+    //or -1 if there is none
+    public int nextLight(int x, int y, int direction) {
+        if (x < 0 || y < 0 || x >= width || y >= height ||
+                direction == Direction.NONE) {
+            return -1;
+        }
+        return nextLight[(y * width + x) * 4 + direction];
+    }
+
+    //Stop square for cars heading in direction d towards light t - the
+    //square in front of the intersection on the car's side of the road
+    private static int stopX(int d, TrafficLight t) {
+        int x = t.getCoords().getX();
+        return d == Direction.RIGHT || d == Direction.DOWN ? x - 1 : x + 1;
+    }
+
+    private static int stopY(int d, TrafficLight t) {
+        int y = t.getCoords().getY();
+        return d == Direction.RIGHT || d == Direction.UP ? y + 1 : y - 1;
+    }
+}
@@ -0,0 +1,105 @@
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Counts of latencies in nanoseconds, in buckets that are exact below 64ns
+//and otherwise within 1/32 (about 3%) of the value, so percentiles come
+//out close enough without keeping every sample. Any number of threads
+//can record at once.
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    //every long fits: 64 powers of two, SUB_BUCKETS buckets each
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+    }
+
+    //Move every count recorded so far into a new histogram, leaving this
+    //one to carry on counting from zero
+    public LatencyHistogram drain() {
+        LatencyHistogram drained = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, -count);
+                drained.counts.set(i, count);
+            }
+        }
+        return drained;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    //Upper bound of the bucket holding the p'th fraction of the samples
+    //(p = 0.99 for the 99th percentile), or 0 if there are none
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highest(i);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    //"p50 12.3us p99 45.6us p99.9 80.1us max 0.2ms"
+    public String summary() {
+        return "p50 " + format(percentile(0.5))
+                + " p99 " + format(percentile(0.99))
+                + " p99.9 " + format(percentile(0.999))
+                + " max " + format(percentile(1.0));
+    }
+
+    static String format(long nanos) {
+        if (nanos < 1000) {
+            return nanos + "ns";
+        } else if (nanos < 1000000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+
+    //Values below 2*SUB_BUCKETS get a bucket each; above that, each power
+    //of two is split into SUB_BUCKETS equal parts
+    private static int bucket(long v) {
+        if (v < 2 * SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exponent - 5;
+        return (shift + 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long highest(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        long high = ((sub + 1) << shift) - 1;
+        return high < 0 ? Long.MAX_VALUE : high;
+    }
+}
@@ -1,26 +1,20 @@
-import interfaces.Car;
 import interfaces.LearningModule;
+import interfaces.LightController;
 import interfaces.RoadMap;
 import interfaces.TrafficLight;
-import utils.Coords;
+import utils.Rng;
 
 import java.awt.Graphics;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /*
  * Class to run simulation with discrete intervals
@@ -45,7 +39,37 @@ public class Main {
         boolean consoleOutput = false;
 
         int intensityRange  = 5;
-        if (args.length == 1) {
+        //a trace written by FlowIngest, read straight from the file
+        IntensityTrace trace = null;
+        if (args.length == 1 && IntensityTrace.isTrace(new File(args[0]))) {
+        	vary = true;
+        	try {
+        		trace = IntensityTrace.load(new File(args[0]));
+        	} catch (IOException e) {
+        		System.out.println("Trace could not be loaded: "
+        				+ e.getMessage());
+        		System.exit(-1);
+        	}
+        	intensityRange = trace.rows();
+        }
+        //or a directory of live snapshots, picked up as they arrive
+        //(java Main live/); each test round then runs for feed.intervals
+        //intervals, on whatever traffic was fed in last
+        IntensityFeed feed = null;
+        if (args.length == 1 && new File(args[0]).isDirectory()) {
+        	vary = true;
+        	graphicalOutput = !Boolean.getBoolean("java.awt.headless");
+        	feed = new IntensityFeed(new File(args[0]));
+        	try {
+        		feed.start();
+        	} catch (IOException e) {
+        		System.out.println("Feed could not be started: "
+        				+ e.getMessage());
+        		System.exit(-1);
+        	}
+        	intensityRange = Integer.getInteger("feed.intervals", 12);
+        }
+        else if (args.length == 1 && trace == null) {
         	vary = true;
     		try (BufferedReader br = new BufferedReader(new FileReader(args[0]))) {
 
@@ -79,6 +103,70 @@ public class Main {
 
         final int STEP_TIME = 100;
 
+        //Training replicas run in parallel (java -Dthreads=N Main),
+        //merging their q-tables every SYNC_INTERVAL ticks, or all learning
+        //into one shared table when run with -Dshared=true
+        final int TRAINING_THREADS = Integer.getInteger("threads", 1);
+        final int SYNC_INTERVAL = 5000;
+        final boolean SHARED_TABLE = Boolean.getBoolean("shared");
+
+        //Cars on large maps are moved tile by tile on this many threads
+        //(java -Dstep.threads=N Main); it does not change the results
+        final int STEP_THREADS = Integer.getInteger("step.threads", 1);
+
+        //The trained q-table can be exported as a greedy policy
+        //(java -Dpolicy=file Main), and the trained round tested with that
+        //policy, without exploring or learning (-Dgreedy=true)
+        final String POLICY_FILE = System.getProperty("policy");
+        final boolean GREEDY = Boolean.getBoolean("greedy");
+
+        //The trained round can instead keep learning on a thread of its
+        //own (java -Donline=true Main), so the simulation thread never
+        //waits for a q-table update; the table the lights are chosen from
+        //is refreshed every online.publish.millis
+        final boolean ONLINE = Boolean.getBoolean("online");
+        final int ONLINE_PUBLISH_MILLIS = Integer.getInteger("online.publish.millis", 100);
+        final int ONLINE_QUEUE = 1 << 16;
+
+        //Single threaded training can also learn again from past
+        //transitions: after every tick, replay.batches minibatches of
+        //replay.batch drawn from the last replay.capacity (java
+        //-Dreplay.batches=4 Main). Off by default.
+        final int REPLAY_BATCHES = Integer.getInteger("replay.batches", 0);
+        final int REPLAY_BATCH = Integer.getInteger("replay.batch", 32);
+        final int REPLAY_CAPACITY = Integer.getInteger("replay.capacity", 1 << 20);
+
+        //Test rounds without output can skip the ticks over which the map
+        //is empty and no car arrives (java -Dfastforward=true Main); the
+        //lights are held and nothing is learnt meanwhile. Off by default.
+        final boolean FAST_FORWARD = Boolean.getBoolean("fastforward");
+
+        //Single threaded training saves its progress to ./20k.ckpt every
+        //CHECKPOINT_TICKS ticks or CHECKPOINT_SECONDS seconds (0 turns
+        //either off); a run that finds the file carries on from it
+        final int CHECKPOINT_TICKS = Integer.getInteger("checkpoint.ticks", 50000);
+        final int CHECKPOINT_SECONDS = Integer.getInteger("checkpoint.seconds", 60);
+
+        //Every random stream - car arrivals, exploration, replay - is split
+        //from one root generator, so a run can be repeated with java
+        //-Dseed=N Main; without it the root is seeded from the clock
+        Long seed = Long.getLong("seed");
+        final Rng seeds = seed == null ? new Rng() : new Rng(seed);
+
+        //Road network to run on (java -Dscenario=file Main), by default
+        //the 60x60 map with four lights
+        String scenarioFile = System.getProperty("scenario");
+        Scenario scenario = Scenario.defaultScenario();
+        if (scenarioFile != null) {
+            try {
+                scenario = Scenario.load(new File(scenarioFile));
+            } catch (IOException e) {
+                System.out.println("Scenario could not be loaded: "
+                        + e.getMessage());
+                System.exit(-1);
+            }
+        }
+
         //Graphics and runtime parameters
 
         boolean output = graphicalOutput || consoleOutput;
@@ -108,68 +196,35 @@ public class Main {
         //AVERAGE ITER
         final int BIG_ITER=1;
 
-        //Initialise map, list of cars currently on map, and list of
-        //trafficlights
-        RoadMap map = new RoadMapImpl();
-        List<Car> cars = new ArrayList<Car>();
-        List<TrafficLight> trafficLights =
-                new ArrayList<TrafficLight>();
-        trafficLights.add(
-                new TrafficLightImpl(new Coords(20, 20),false));
-        trafficLights.add(
-                new TrafficLightImpl(new Coords(20, 40),true));
-        trafficLights.add(
-                new TrafficLightImpl(new Coords(40, 20),true));
-        trafficLights.add(
-                new TrafficLightImpl(new Coords(40, 40),false));
-
         //Set actionposition based on arg1
-        int actionPosition = 1000;
-        switch (rewardFunction) {
-            case 1:
-                actionPosition = 1000;
-                break;
-            case 2:
-            case 3:
-                actionPosition = 100000;
-                break;
-            }
-        Viewer v = graphicalOutput ? new Viewer() : null;
+        int actionPosition = Simulation.actionPosition(rewardFunction);
+        Viewer v = graphicalOutput ? new Viewer(scenario) : null;
 
         
         //Simulation tests
         int currentTimeStep;
 
 
-        //Basic logic for each time step
-        // - change traffic lights if required - call a function from
-        //   'learning' class to do this
-        // - move cars in their current direction by velocity (modify
-        //   velocity if necessary - using CarAI)
-        // - spawn cars at extremities
-        // - Now that we have the new state, update the qvalue for the
-        //  previous s,a pair
-
         //TRAINING TIME
 
-        File varTmpDir = new File("./20k");
+        File varTmpDir = new File("./20k.qt");
         boolean exists = varTmpDir.exists();
         LearningModule learningModule;
         int timeRan = 0;
 
         if (exists && TRAINING_TIME!=0) {
         	try {
-        		FileInputStream fi = new FileInputStream(new File("./20k"));
-    			ObjectInputStream oi = new ObjectInputStream(fi);
-
-
-    			learningModule =  (LearningModule) oi.readObject();
-
-    			oi.close();
-    			fi.close();
+    			QTableCheckpoint checkpoint = QTableCheckpoint.load(varTmpDir);
+    			if (checkpoint.getStateEncoder() != rewardFunction) {
+    				throw new IOException(varTmpDir + " was trained with reward "
+    						+ checkpoint.getStateEncoder());
+    			}
+    			learningModule = checkpoint.getLearningModule();
+    			((LearningModuleImpl) learningModule).getRng()
+    					.setState(seeds.nextLong());
         	}
          catch (Exception e) {
- 			learningModule = new LearningModuleImpl(actionPosition);
+ 			learningModule = new LearningModuleImpl(actionPosition, seeds.split());
 			e.printStackTrace();
 			System.exit(-1); //Can be removed for skipping training.
 		}
@@ -177,135 +232,92 @@ public class Main {
         }
 
         else {
-        learningModule = new LearningModuleImpl(actionPosition);
-
-
-        for (timeRan = 0; timeRan < TRAINING_TIME; timeRan++) {
+        learningModule = new LearningModuleImpl(actionPosition, seeds.split());
+
+        if (TRAINING_THREADS > 1 && TRAINING_TIME != 0 && SHARED_TABLE) {
+            //Replicas all updating one lock-free table
+            SharedTableTrainer trainer = new SharedTableTrainer(
+                    scenario, rewardFunction, TRAINING_THREADS, seeds.split());
+            trainer.train((LearningModuleImpl) learningModule, TRAINING_TIME);
+            totalCarsStopped += trainer.getTotalCarsStopped();
+        } else if (TRAINING_THREADS > 1 && TRAINING_TIME != 0) {
+            //Independent replicas, merged into learningModule as they go
+            ParallelTrainer trainer = new ParallelTrainer(scenario,
+                    rewardFunction, TRAINING_THREADS, SYNC_INTERVAL,
+                    seeds.split());
+            trainer.train((LearningModuleImpl) learningModule, TRAINING_TIME);
+            totalCarsStopped += trainer.getTotalCarsStopped();
+        } else {
+        File checkpointFile = new File("./20k.ckpt");
+        CheckpointWriter checkpoints = new CheckpointWriter(
+                checkpointFile, CHECKPOINT_TICKS, CHECKPOINT_SECONDS * 1000L);
+        TrainingCheckpoint resume = null;
+        if (TRAINING_TIME != 0 && checkpointFile.exists()) {
+            try {
+                resume = TrainingCheckpoint.load(checkpointFile);
+                if (resume.getStateEncoder() != rewardFunction) {
+                    throw new IOException(checkpointFile
+                            + " was trained with reward "
+                            + resume.getStateEncoder());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(-1);
+            }
+            learningModule = resume.getLearningModule();
+            timeRan = resume.getTimeRan();
+            trafficIntensity = resume.getTrafficIntensity();
+            iterations = resume.getIterations();
+            totalCarsStopped = resume.getTotalCarsStopped();
+            maxCarsStopped = resume.getMaxCarsStopped();
+            System.out.println("Resuming training at tick " + timeRan);
+        }
+        Simulation training = new Simulation(scenario, rewardFunction,
+                learningModule, seeds.split(), STEP_THREADS);
+        if (resume != null) {
+            resume.restore(training);
+        }
+        if (REPLAY_BATCHES > 0) {
+            training.setReplay(new ReplayBuffer(REPLAY_CAPACITY,
+                    REPLAY_BATCH, seeds.split()), REPLAY_BATCHES);
+        }
+        for (; timeRan < TRAINING_TIME; timeRan++) {
 
             if(timeRan % TRAINING_INTENSITY_INTERVAL ==0) {
               trafficIntensity +=0.2;
+              training.setTrafficIntensity(trafficIntensity);
               //System.out.println(trafficIntensity);
             }
-            //Params required to learn
-            RoadMap currentState = map.copyMap();
-            currentState.addCars(cars);
-            List<Boolean> switchedLights;
-            List<Integer> states = new ArrayList<Integer>();
-            List<Integer> nextStates = new ArrayList<Integer>();
-            List<Integer> rewards = new ArrayList<Integer>();
-
-            //Save the states of each traffic light before updating
-            for (TrafficLight light: trafficLights) {
-                switch (rewardFunction) {
-                    case 1:
-                        states.add(currentState.stateCode(light));
-                        break;
-                    case 2:
-                        states.add(currentState.stateCode2(light));
-                        break;
-                    case 3:
-                        states.add(currentState.stateCode3(light, cars));
-                        break;
-                }
-            }
-
-            //Use the learned values to update the traffic lights
-            switchedLights = learningModule.updateTrafficLights(
-                    currentState, trafficLights, timeRan
-            );
-
-            //copy updated state of map
-            RoadMap nextState = currentState.copyMap();
-
-            //Move cars currently on map
-            List<Car> carsToRemove = new ArrayList<Car>();
-            for (Car car : cars) {
-                car.move(
-                        currentState.getClosestTrafficLight(
-                                car, trafficLights),
-                        nextState);
-                int x=car.getCoords().getX(), y=car.getCoords().getY();
-                if (x<0 || x>=60 || y<0 || y>=60) {
-                     carsToRemove.add(car);
-                }
-            }
-            cars.removeAll(carsToRemove);
-
-            //Spawn cars onto map extremities
-            for (Coords roadEntrance : map.getRoadEntrances()) {
-                if (
-                    Math.random() <= trafficIntensity &&
-                    !currentState.carAt(roadEntrance)
-                ) {
-                    Car c = new CarImpl(
-                            new Coords(roadEntrance),
-                            map.getStartingVelocity(roadEntrance)
-                    );
-                    cars.add(c);
-                    totalCars ++;
-                }
-            }
-            nextState.addCars(cars);
+            int localCarsStopped = training.step(true);
 
             //Update statistics
             iterations++;
-            int localCarsStopped = 0;
-            for (Car car : cars) {
-                int dx = car.getVelocity().getXSpeed();
-                int dy = car.getVelocity().getYSpeed();
-                if (dx == 0 && dy == 0) {
-                    localCarsStopped++;
-                }
-            }
             totalCarsStopped += localCarsStopped;
 
             if (localCarsStopped > maxCarsStopped) {
                 maxCarsStopped = localCarsStopped;
             }
 
-            // Updates q-values
-            //calculate reward and state code for each traffic light
-            for (TrafficLight light : trafficLights) {
-                switch (rewardFunction) {
-                    case 1:
-                        rewards.add(learningModule.reward(
-                                nextState.stateCode(light)));
-                        nextStates.add(nextState.stateCode(light));
-                        break;
-                    case 2:
-                        rewards.add(learningModule.reward2(
-                                nextState.stateCode2(light)));
-                        nextStates.add(nextState.stateCode2(light));
-                        break;
-                    case 3:
-                        rewards.add(learningModule.reward3(
-                                nextState.stateCode3(light, cars)));
-                        nextStates.add(nextState.stateCode3(light, cars));
-                        break;
-                }
-
+            if (checkpoints.due(timeRan + 1)) {
+                checkpoints.write(TrainingCheckpoint.take(timeRan + 1,
+                        trafficIntensity, iterations, totalCarsStopped,
+                        maxCarsStopped, training, rewardFunction,
+                        (LearningModuleImpl) learningModule));
             }
-
-
-            learningModule.learn(
-                states, switchedLights, rewards, nextStates,
-                trafficLights
-            );
           }
+        if (TRAINING_TIME != 0) {
+            checkpoints.finish();
+        }
+        training.close();
+        }
 
 
         //Object saving
 
         try {
         	if(TRAINING_TIME!=0) {
-			FileOutputStream f = new FileOutputStream(new File("./20k"));
-			ObjectOutputStream o = new ObjectOutputStream(f);
-
-			// Write objects to file
-			o.writeObject(learningModule);
-
-			o.close();
-			f.close();
+			QTableCheckpoint.save(varTmpDir, rewardFunction,
+					(LearningModuleImpl) learningModule);
         	}
 
 		} catch (FileNotFoundException e) {
@@ -315,30 +327,105 @@ public class Main {
 		}
         }
 
-        //KEY = Intensity;Timestep  VALUE = sum of avg wait-times
-        HashMap<String, Float> hmap = new HashMap<String, Float>();
+        LightController controller = learningModule;
+        LearningModule learner = learningModule;
+        boolean learnWhileTesting = TRAINING_TIME != 0;
+        if (TRAINING_TIME != 0 && (POLICY_FILE != null || GREEDY)) {
+            GreedyPolicy policy = GreedyPolicy.compile(rewardFunction,
+                    (LearningModuleImpl) learningModule);
+            if (POLICY_FILE != null) {
+                try {
+                    policy.save(new File(POLICY_FILE));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (GREEDY) {
+                controller = new GreedyController(policy);
+                learner = null;
+                learnWhileTesting = false;
+            }
+        }
+        OnlineLearner online = null;
+        if (TRAINING_TIME != 0 && ONLINE && !GREEDY) {
+            online = new OnlineLearner((LearningModuleImpl) learningModule,
+                    ONLINE_QUEUE, ONLINE_PUBLISH_MILLIS, seeds.split());
+            online.start();
+            controller = online;
+            learner = online;
+        }
+
+        Simulation simulation = new Simulation(scenario, rewardFunction,
+                controller, learner, seeds.split(), STEP_THREADS);
+        RoadMap map = simulation.getMap();
+        List<TrafficLight> trafficLights = simulation.getTrafficLights();
+        double[] entranceIntensities =
+                new double[map.getRoadEntrances().size()];
+
+        //Sum of avg wait-times per intensity (or trace time) and
+        //timestep within its interval
+        WaitMetrics metrics = new WaitMetrics(
+                TESTING_INTENSITY_INTERVAL / TIMESTEP_INTERVAL);
 
 
         for(int iter=0;iter<BIG_ITER;iter++) {
           trafficIntensity =0.0;
-          cars.clear();
+          simulation.clearCars();
 
           //Simulation time
 
           int index = 0;
           String[] currIntensity = {"","","","","","","",""};
           String currTime = "";
+          IntensityFeed.Reading fed = null;
+          int bucket = -1;
           for (timeRan = 0; timeRan < SIMULATION_TIME; timeRan++) {
+        	  //a new live snapshot takes effect on the very next tick
+        	  IntensityFeed.Reading reading = feed != null ? feed.latest() : null;
+        	  if (reading != fed) {
+        		  fed = reading;
+        		  currIntensity = fed.getLabels();
+        		  currTime = IntensityTrace.clock(fed.getTime());
+        		  for (int i = 0; i < entranceIntensities.length; i++) {
+        			  float jamFactor = fed.jamFactor(i % fed.columns());
+        			  entranceIntensities[i] = Float.isNaN(jamFactor)
+        					  ? 0 : jamFactor / 10.0;
+        		  }
+        		  simulation.setTrafficIntensities(entranceIntensities);
+        		  bucket = metrics.bucket(currTime);
+        	  }
         	  if(timeRan % TESTING_INTENSITY_INTERVAL ==0) {
-        		  if(vary) {
+        		  if(vary && trace != null) {
+        			  currTime = trace.clock(index);
+        			  //entrances without a reading get no cars
+        			  for (int i = 0; i < entranceIntensities.length; i++) {
+        				  float jamFactor = trace.jamFactor(index,
+        						  i % trace.columns());
+        				  entranceIntensities[i] = Float.isNaN(jamFactor)
+        						  ? 0 : jamFactor / 10.0;
+        			  }
+        			  index+=1;
+        			  simulation.setTrafficIntensities(entranceIntensities);
+        		  }
+        		  else if(vary && feed == null) {
         			  currIntensity = intensityList.get(index);
         			  currTime = APITime.get(index);
         			  index+=1;
+        			  //scenarios with more entrances than the file has
+        			  //columns reuse the columns in turn
+        			  for (int i = 0; i < entranceIntensities.length; i++) {
+        				  entranceIntensities[i] = Double.valueOf(
+        						  currIntensity[i % currIntensity.length])/10;
+        			  }
+        			  simulation.setTrafficIntensities(entranceIntensities);
         		  }
-        		  else {
+        		  else if(!vary) {
                       trafficIntensity +=0.2;
-                      cars.clear();
+                      simulation.setTrafficIntensity(trafficIntensity);
+                      simulation.clearCars();
         		  }
+        		  bucket = metrics.bucket(vary
+        				  ? currTime : trafficIntensity.toString());
         		  totalCarsStopped1 += totalCarsStopped;
         		  tmpCars = totalCarsStopped;
                   totalCarsStopped = 0;
@@ -346,84 +433,21 @@ public class Main {
 
                 }
 
-              //Params required to learn
-              RoadMap currentState = map.copyMap();
-              currentState.addCars(cars);
-              List<Boolean> switchedLights;
-              List<Integer> states = new ArrayList<Integer>();
-              List<Integer> nextStates = new ArrayList<Integer>();
-              List<Integer> rewards = new ArrayList<Integer>();
-
-              //Save the states of each traffic light before updating
-              for (TrafficLight light: trafficLights) {
-                  switch (rewardFunction) {
-                      case 1:
-                          states.add(currentState.stateCode(light));
-                          break;
-                      case 2:
-                          states.add(currentState.stateCode2(light));
-                          break;
-                      case 3:
-                          states.add(currentState.stateCode3(light, cars));
-                          break;
-                  }
+              //Jump over a quiet stretch, up to the next recorded timestep,
+              //or move the simulation on a tick, learning as it goes if
+              //it has been trained
+              int skipped = 0;
+              if (FAST_FORWARD && !output && feed == null) {
+                  skipped = simulation.fastForward(TIMESTEP_INTERVAL
+                          - timeRan % TIMESTEP_INTERVAL);
               }
+              int localCarsStopped = skipped > 0
+                      ? 0 : simulation.step(learnWhileTesting);
 
-              //Use the learned values to update the traffic lights
-              switchedLights = learningModule.updateTrafficLights(
-                      currentState, trafficLights, timeRan
-              );
-
-              //copy updated state of map
-              RoadMap nextState = currentState.copyMap();
-
-              //Move cars currently on map
-              List<Car> carsToRemove = new ArrayList<Car>();
-              for (Car car : cars) {
-                  car.move(
-                          currentState.getClosestTrafficLight(
-                                  car, trafficLights),
-                          nextState);
-                  int x=car.getCoords().getX(), y=car.getCoords().getY();
-                  if (x<0 || x>=60 || y<0 || y>=60) {
-                       carsToRemove.add(car);
-                  }
-              }
-              cars.removeAll(carsToRemove);
-
-              int i_tmp=0;
-              //Spawn cars onto map extremities
-              for (Coords roadEntrance : map.getRoadEntrances()) {
-
-            	  if(vary) {
-            		  trafficIntensity = Double.valueOf(currIntensity[i_tmp])/10;
-	            	  i_tmp+=1;
-            	  }
-            	  if (
-                      Math.random() <= trafficIntensity &&
-                      !currentState.carAt(roadEntrance)
-                  ) {
-                      Car c = new CarImpl(
-                              new Coords(roadEntrance),
-                              map.getStartingVelocity(roadEntrance)
-                      );
-                      cars.add(c);
-                      totalCars ++;
-                  }
-              }
-              nextState.addCars(cars);
-
-              //Update statistics
-              iterations++;
-              int localCarsStopped = 0;
-              for (Car car : cars) {
-                  int dx = car.getVelocity().getXSpeed();
-                  int dy = car.getVelocity().getYSpeed();
-                  if (dx == 0 && dy == 0) {
-                      localCarsStopped++;
-                  }
-              }
+              //Update statistics, no car being stopped on a skipped tick
+              iterations += Math.max(skipped, 1);
               totalCarsStopped += localCarsStopped;
+              score -= localCarsStopped;
 
 
               if (localCarsStopped > maxCarsStopped) {
@@ -432,124 +456,62 @@ public class Main {
 
 
               if (graphicalOutput) {
-                  v.view(map, cars, trafficLights, currIntensity);
+                  v.view(map, simulation.getCars().asList(), trafficLights,
+                          currIntensity);
                  
                   
               }
               if (consoleOutput) {
-                  map.print(cars, trafficLights);
+                  map.print(simulation.getCars().asList(), trafficLights);
               }
               if (output) {
                   try {
                       Thread.sleep(STEP_TIME);
                   } catch (Exception ignored) {}
               }
-              for (Car c : cars) {
-              int dx = c.getVelocity().getXSpeed();
-              int dy = c.getVelocity().getYSpeed();
-                  score += dx==0&&dy==0 ? -1 : 0;
-              }
-
-
-              if(TRAINING_TIME !=0) {
-              // Updates q-values
-              //calculate reward and state code for each traffic light
-              for (TrafficLight light : trafficLights) {
-                  switch (rewardFunction) {
-                      case 1:
-                          rewards.add(learningModule.reward(
-                                  nextState.stateCode(light)));
-                          nextStates.add(nextState.stateCode(light));
-                          break;
-                      case 2:
-                          rewards.add(learningModule.reward2(
-                                  nextState.stateCode2(light)));
-                          nextStates.add(nextState.stateCode2(light));
-                          break;
-                      case 3:
-                          rewards.add(learningModule.reward3(
-                                  nextState.stateCode3(light, cars)));
-                          nextStates.add(nextState.stateCode3(light, cars));
-                          break;
-                  }
-
-              }
-
-
-              learningModule.learn(
-                  states, switchedLights, rewards, nextStates,
-                  trafficLights
-              );
-              }
 
          if (timeRan % TIMESTEP_INTERVAL ==0) {
-        	  Integer tmp = timeRan% TESTING_INTENSITY_INTERVAL;
-        	  String key;
-        	  if(vary) {
-        		  //index instead of traffic intensity
-            	  key = currTime+";"+tmp.toString();
-        	  }
-        	  else {
-        		  key = trafficIntensity.toString()+";"+tmp.toString();
-        	  }
-        	hmap.put(key , hmap.getOrDefault(key, (float)0.0) + ((float)tmpCars)/TESTING_INTENSITY_INTERVAL);
+        	  int slot = timeRan % TESTING_INTENSITY_INTERVAL / TIMESTEP_INTERVAL;
+        	  metrics.add(bucket, slot,
+        			  ((float)tmpCars)/TESTING_INTENSITY_INTERVAL);
 
             //System.out.println(trafficIntensity+","+((float)totalCarsStopped)/TESTING_INTENSITY_INTERVAL +","+ timeRan% TESTING_INTENSITY_INTERVAL );
           }
+         if (skipped > 1) {
+             timeRan += skipped - 1;
+         }
 
 
           }
 
 
         }
+        simulation.close();
+        if (online != null) {
+            online.stop();
+            System.out.println("Online learning: " + online.getLearnt()
+                    + " transitions learnt, " + online.getDropped()
+                    + " dropped, " + online.getPublished()
+                    + " tables published");
+        }
+        if (feed != null) {
+            System.out.println("Live feed: " + feed.getUpdates()
+                    + " snapshots so far");
+        }
 
 
+        //Vary runs write time,wait; the others intensity,wait,timestep
+        int slotTicks = vary ? 0 : TIMESTEP_INTERVAL;
         try{
-            PrintWriter writer;
-            if(TRAINING_TIME==0) {
-            	writer = new PrintWriter("without_training.csv", "UTF-8");
-            }
-            else {
-            	writer = new PrintWriter("with_training.csv", "UTF-8");
-            }
-
-            for (Map.Entry<String, Float> entry : hmap.entrySet()) {
-                String key[] = entry.getKey().split(";");
-
-                String trafficIndex;
-                trafficIndex = key[0];
-                int currTimeStep = Integer.valueOf(key[1]);
-                Float waitTime = entry.getValue()/BIG_ITER;
-                if(vary) {
-                    writer.println(trafficIndex+","+waitTime);
-                }
-                else {
-                	writer.println(trafficIndex+","+waitTime+","+ currTimeStep);
-
-                }
-            }
-            writer.close();
+            metrics.write(new File(TRAINING_TIME == 0
+                    ? "without_training.csv" : "with_training.csv"),
+                    BIG_ITER, slotTicks);
             System.out.println("Output saved to file!");
         } catch (IOException e) {
            System.out.println("Output could not be written to file\nConsole Output:");
-           for (Map.Entry<String, Float> entry : hmap.entrySet()) {
-               String key[] = entry.getKey().split(";");
-
-               String trafficIndex;
-               trafficIndex = key[0];
-               int currTimeStep = Integer.valueOf(key[1]);
-               Float waitTime = entry.getValue()/BIG_ITER;
-               if(vary) {
-
-               	System.out.println(trafficIndex+","+waitTime );
-               }
-               else {
-               	System.out.println(trafficIndex+","+waitTime+","+ currTimeStep );
-
-               }
-           }
-
-
+           try {
+               metrics.write(new PrintWriter(System.out), BIG_ITER, slotTicks);
+           } catch (IOException ignored) {}
         }
         }
 
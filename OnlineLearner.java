@@ -0,0 +1,232 @@
+import interfaces.Car;
+import interfaces.LearningModule;
+import interfaces.QTable;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import utils.Rng;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+//Online learning split over two threads, so that learning never holds up
+//the thread stepping the simulation. The simulation thread (the actor)
+//only works out states and picks actions, from the latest published copy
+//of the q-table; learn() just queues each light's transition on a
+//TransitionRing. A learner thread drains the ring into the trained
+//module's own table and every publishMillis publishes a fresh copy of it,
+//which the actor picks up at its next tick.
+//
+//A transition that finds the ring full is dropped rather than waited for.
+//While the learner is running the trained module belongs to it; stop()
+//hands it back up to date.
+public class OnlineLearner implements LearningModule {
+    private static final long serialVersionUID = 1L;
+    //transitions the learner takes from the ring before checking the time
+    private static final int BATCH = 1024;
+    private static final long IDLE_NANOS = 100000;
+
+    private final LearningModuleImpl learner;
+    private final TransitionRing ring;
+    private final long publishNanos;
+    private final TransitionRing.Visitor update =
+            new TransitionRing.Visitor() {
+        public void transition(
+                int state, int action, int reward, int nextState) {
+            learner.learn(state, action, reward, nextState);
+        }
+    };
+
+    //swapped whole, so the actor never sees a table being written
+    private volatile Snapshot published;
+    private volatile boolean running;
+    private transient Thread thread;
+    //learner thread's count, read after it is joined
+    private long learnt;
+
+    //actor's side: a module exploring the snapshot it last picked up
+    private final LearningModuleImpl actor;
+    private int actorVersion;
+    private long dropped;
+
+    OnlineLearner(LearningModuleImpl learner, int capacity,
+            long publishMillis, Rng rand) {
+        this.learner = learner;
+        this.ring = new TransitionRing(capacity);
+        this.publishNanos = publishMillis * 1000000L;
+        this.actor = learner.replicate(rand);
+        this.published = new Snapshot(actor.getQTable(), 0);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            public void run() {
+                learnUntilStopped();
+            }
+        }, "online-learner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //Stop the learner once it has learnt everything queued so far
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    private void learnUntilStopped() {
+        long lastPublish = System.nanoTime();
+        long sincePublish = 0;
+        while (true) {
+            //read running first, so a stop() always finds the ring drained
+            boolean stopping = !running;
+            int n = ring.drain(update, BATCH);
+            learnt += n;
+            sincePublish += n;
+            long now = System.nanoTime();
+            if (sincePublish > 0
+                    && (now - lastPublish >= publishNanos || stopping)) {
+                publish();
+                lastPublish = now;
+                sincePublish = 0;
+            }
+            if (stopping && n == 0) {
+                return;
+            }
+            if (n == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private void publish() {
+        published = new Snapshot(learner.getQTable().copy(),
+                published.version + 1);
+    }
+
+    @Override
+    public void updateTrafficLights(
+            RoadMap r, List<TrafficLight> trafficLights, int timeRan,
+            boolean[] switched) {
+        Snapshot latest = published;
+        if (latest.version != actorVersion) {
+            actor.setQTable(latest.table);
+            actorVersion = latest.version;
+        }
+        actor.updateTrafficLights(r, trafficLights, timeRan, switched);
+    }
+
+    @Override
+    public List<Boolean> updateTrafficLightsRandomly(
+            RoadMap mapWithCars, List<TrafficLight> trafficLights) {
+        return actor.updateTrafficLightsRandomly(mapWithCars, trafficLights);
+    }
+
+    //Queue the transitions for the learner thread; unlike the other
+    //modules this returns before anything is learnt
+    @Override
+    public void learn(
+            List<Integer> pastStates, List<Boolean> switches,
+            List<Integer> rewards, List<Integer> newStates,
+            List<TrafficLight> lights) {
+        for (int i = 0; i < lights.size(); i++) {
+            if (!ring.offer(pastStates.get(i), switches.get(i) ? 1 : 0,
+                    rewards.get(i), newStates.get(i))) {
+                dropped++;
+            }
+        }
+    }
+
+    @Override
+    public void learn(
+            int[] pastStates, boolean[] switches, int[] rewards,
+            int[] newStates, int count) {
+        for (int i = 0; i < count; i++) {
+            if (!ring.offer(pastStates[i], switches[i] ? 1 : 0,
+                    rewards[i], newStates[i])) {
+                dropped++;
+            }
+        }
+    }
+
+    //The learner's parameters only change between runs; the actor's
+    //epsilon is changed along with them
+    @Override
+    public synchronized void setRLParam(
+            float alpha, float gamma, float epsilon) {
+        if (running) {
+            throw new IllegalStateException(
+                    "Stop the learner before changing its parameters");
+        }
+        learner.setRLParam(alpha, gamma, epsilon);
+        actor.setRLParam(alpha, gamma, epsilon);
+    }
+
+    public int reward(int stateCode) {
+        return actor.reward(stateCode);
+    }
+
+    public int reward2(int stateCode) {
+        return actor.reward2(stateCode);
+    }
+
+    public int reward3(int stateCode) {
+        return actor.reward3(stateCode);
+    }
+
+    public int reward4(List<Car> cars, TrafficLight light) {
+        return actor.reward4(cars, light);
+    }
+
+    //The module being trained; only safe to use while stopped
+    public LearningModuleImpl getLearningModule() {
+        return learner;
+    }
+
+    //Version of the table the actor is currently choosing from
+    public int getVersion() {
+        return actorVersion;
+    }
+
+    public int getPublished() {
+        return published.version;
+    }
+
+    //Transitions learnt so far; only up to date while stopped
+    public long getLearnt() {
+        return learnt;
+    }
+
+    //Transitions the actor had to drop because the ring was full
+    public long getDropped() {
+        return dropped;
+    }
+
+    private static class Snapshot {
+        final QTable table;
+        final int version;
+
+        Snapshot(QTable table, int version) {
+            this.table = table;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+
+import interfaces.QTable;
+import utils.Rng;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Trains one learning module with several independent simulations at
+//once. Each replica has its own world, random stream and copy of the
+//q-table and runs on a ForkJoinPool. Every syncInterval ticks the copies
+//are merged back into one table - each entry is the average of the
+//replicas' values, weighted by how often each replica visited it since
+//the last merge - and every replica carries on from the merged table.
+public class ParallelTrainer {
+    private final Scenario scenario;
+    private final int rewardFunction;
+    private final int replicas;
+    private final int syncInterval;
+    private final Rng rand;
+    private long totalCarsStopped;
+
+    ParallelTrainer(Scenario scenario, int rewardFunction, int replicas,
+            int syncInterval, Rng rand) {
+        this.scenario = scenario;
+        this.rewardFunction = rewardFunction;
+        this.replicas = replicas;
+        this.syncInterval = syncInterval;
+        this.rand = rand;
+    }
+
+    //Trains learningModule for trainingTime ticks in total, shared out
+    //between the replicas. Like the single threaded training, each
+    //replica steps the intensity from 0.2 up to 1.0 in five equal parts.
+    public void train(LearningModuleImpl learningModule, int trainingTime) {
+        final int ticks = trainingTime / replicas;
+        final int intensityInterval = Math.max(1, ticks / 5);
+
+        final List<Simulation> simulations = new ArrayList<Simulation>();
+        final List<LearningModuleImpl> modules =
+                new ArrayList<LearningModuleImpl>();
+        for (int r = 0; r < replicas; r++) {
+            Rng stream = rand.split();
+            LearningModuleImpl module = learningModule.replicate(stream.split());
+            modules.add(module);
+            simulations.add(new Simulation(
+                    scenario, rewardFunction, module, stream));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(replicas);
+        try {
+            for (int from = 0; from < ticks; from += syncInterval) {
+                final int start = from;
+                final int end = Math.min(ticks, from + syncInterval);
+                List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+                for (final Simulation simulation : simulations) {
+                    tasks.add(new Callable<Long>() {
+                        public Long call() {
+                            long carsStopped = 0;
+                            for (int t = start; t < end; t++) {
+                                if (t % intensityInterval == 0) {
+                                    int part = Math.min(t / intensityInterval, 4);
+                                    simulation.setTrafficIntensity(0.2 * (part + 1));
+                                }
+                                carsStopped += simulation.step(true);
+                            }
+                            return carsStopped;
+                        }
+                    });
+                }
+                for (Future<Long> result : pool.invokeAll(tasks)) {
+                    totalCarsStopped += result.get();
+                }
+
+                List<QTable> tables = new ArrayList<QTable>();
+                for (LearningModuleImpl module : modules) {
+                    tables.add(module.getQTable());
+                }
+                QTable merged = merge(learningModule.getQTable(), tables,
+                        learningModule.getActionPosition());
+                learningModule.setQTable(merged);
+                for (LearningModuleImpl module : modules) {
+                    module.setQTable(merged.copy());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Training replica failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Visit-weighted average of copies that all started out equal to base
+    static QTable merge(QTable base, List<QTable> copies, int actionPosition) {
+        final QTable sums = LearningModuleImpl.newQTable(actionPosition);
+        final QTable weights = LearningModuleImpl.newQTable(actionPosition);
+        final QTable from = base;
+        for (QTable copy : copies) {
+            copy.forEach(new QTable.EntryVisitor() {
+                public void visit(int key, float value, int visits) {
+                    int newVisits = visits - from.visits(key);
+                    if (newVisits > 0) {
+                        sums.set(key, sums.get(key) + newVisits * value, 1);
+                        weights.set(key, weights.get(key) + newVisits, 1);
+                    }
+                }
+            });
+        }
+        final QTable merged = base.copy();
+        weights.forEach(new QTable.EntryVisitor() {
+            public void visit(int key, float weight, int visits) {
+                merged.set(key, sums.get(key) / weight,
+                        from.visits(key) + (int) weight);
+            }
+        });
+        return merged;
+    }
+
+    //Cars stopped, summed over every tick of every replica
+    public long getTotalCarsStopped() {
+        return totalCarsStopped;
+    }
+}
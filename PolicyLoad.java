@@ -0,0 +1,133 @@
+
+import utils.Rng;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Load generator for PolicyServer: opens several connections and has each
+//send batches of random requests back to back for a while, timing every
+//round trip. Prints throughput and round trip percentiles at the end.
+//
+//  java [-Dport=7411] [-Dconnections=4] [-Dbatch=8] [-Dseconds=10]
+//       PolicyLoad
+public class PolicyLoad {
+
+    public static void main(String[] args) throws Exception {
+        final int port = Integer.getInteger("port", PolicyServer.DEFAULT_PORT);
+        int connections = Integer.getInteger("connections", 4);
+        final int batch = Integer.getInteger("batch", 8);
+        final long nanos = 1000000000L * Integer.getInteger("seconds", 10);
+
+        final LatencyHistogram roundTrips = new LatencyHistogram();
+        final AtomicLong decisions = new AtomicLong();
+        final AtomicLong switches = new AtomicLong();
+        final int[] lastVersion = new int[connections];
+        final IOException[] failures = new IOException[connections];
+        final Rng seeds = new Rng();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int c = 0; c < connections; c++) {
+            final int connection = c;
+            final Rng rand = seeds.split();
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        lastVersion[connection] = drive(port, batch, nanos,
+                                rand, roundTrips, decisions, switches);
+                    } catch (IOException e) {
+                        failures[connection] = e;
+                    }
+                }
+            }, "policy-load-" + c));
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (IOException failure : failures) {
+            if (failure != null) {
+                System.out.println("Connection failed: " + failure.getMessage());
+            }
+        }
+        System.out.println(String.format(
+                "%d connections, batches of %d: %.0f decisions/s, "
+                + "%.0f batches/s, %.1f%% switch",
+                connections, batch, decisions.get() / seconds,
+                roundTrips.count() / seconds,
+                100.0 * switches.get() / Math.max(1, decisions.get())));
+        System.out.println("round trip " + roundTrips.summary());
+        int version = 0;
+        for (int v : lastVersion) {
+            version = Math.max(version, v);
+        }
+        System.out.println("last policy version seen " + version);
+    }
+
+    //One connection's worth of load; returns the last policy version the
+    //server answered with
+    private static int drive(int port, int batch, long nanos, Rng rand,
+            LatencyHistogram roundTrips, AtomicLong decisions,
+            AtomicLong switches) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(
+                    socket.getOutputStream(), 1 << 16);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    socket.getInputStream(), 1 << 16));
+            byte[] request = new byte[4 + batch * PolicyServer.REQUEST_BYTES];
+            byte[] reply = new byte[8 + batch * PolicyServer.REPLY_BYTES];
+            int version = 0;
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() < end) {
+                //state codes as stateCode makes them: light, then the
+                //distances 0-9 along each road
+                ByteBuffer requests = ByteBuffer.wrap(request);
+                requests.putInt(batch);
+                for (int i = 0; i < batch; i++) {
+                    requests.putInt(i);
+                    requests.putInt(rand.nextInt(2) + 10 * rand.nextInt(100));
+                    requests.put((byte) (rand.nextInt(4) == 0 ? 0 : 1));
+                }
+
+                long sent = System.nanoTime();
+                out.write(request);
+                out.flush();
+                in.readFully(reply);
+                roundTrips.record(System.nanoTime() - sent);
+
+                ByteBuffer replies = ByteBuffer.wrap(reply);
+                if (replies.getInt() != batch) {
+                    throw new IOException("reply to the wrong batch");
+                }
+                version = replies.getInt();
+                for (int i = 0; i < batch; i++) {
+                    if (replies.getInt() != i) {
+                        throw new IOException("reply out of order");
+                    }
+                    if (replies.get() == 1) {
+                        switches.incrementAndGet();
+                    }
+                }
+                decisions.addAndGet(batch);
+            }
+            return version;
+        } finally {
+            socket.close();
+        }
+    }
+}
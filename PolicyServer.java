@@ -0,0 +1,262 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Long running decision service for live intersections: loads a trained
+//policy once and answers switch/hold requests over a local socket,
+//instead of starting a whole simulation for every decision.
+//
+//  java [-Dport=7411] [-Dreload.millis=1000] [-Dstats.seconds=10]
+//       PolicyServer 20k.qt
+//
+//The file may be a q-table checkpoint (20k.qt), which is compiled into a
+//greedy policy, or a policy exported with -Dpolicy. It is checked every
+//reload.millis and reloaded when it changes; requests already being
+//answered finish with the policy they started with, and a file that
+//cannot be read (say, half written) leaves the old policy in place.
+//
+//Each connection sends batches and gets one reply per batch, in order.
+//All numbers are big-endian:
+//
+//  request  int n, then n x { int intersection, int state, byte delay }
+//  reply    int n, int policy version, then n x { int intersection,
+//           byte decision (1 = switch, 0 = hold) }
+//
+//state is the light's RoadMap.stateCode and delay its getDelay(); a
+//light is only switched when its delay is 0, as in the simulation. An
+//empty batch gets a reply of just n and the policy version.
+public class PolicyServer {
+    static final int DEFAULT_PORT = 7411;
+    static final int MAX_BATCH = 1 << 16;
+    static final int REQUEST_BYTES = 9;
+    static final int REPLY_BYTES = 5;
+
+    private final File file;
+    //swapped whole, so a batch always sees a policy with its own version
+    private volatile Loaded loaded;
+    //the file as it was when last read, whether or not that worked
+    private long seenModified;
+    private long seenLength;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong decisions = new AtomicLong();
+
+    PolicyServer(File file) throws IOException {
+        this.file = file;
+        if (!reload()) {
+            throw new IOException(file + " could not be loaded");
+        }
+    }
+
+    //A greedy policy from either kind of file, told apart by its magic
+    static GreedyPolicy loadPolicy(File file) throws IOException {
+        int magic;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            magic = raf.readInt();
+        } finally {
+            raf.close();
+        }
+        if (magic == QTableCheckpoint.MAGIC) {
+            QTableCheckpoint checkpoint = QTableCheckpoint.load(file);
+            return GreedyPolicy.compile(checkpoint.getStateEncoder(),
+                    checkpoint.getLearningModule());
+        }
+        return GreedyPolicy.load(file);
+    }
+
+    //Load the file if it changed since it was last read; returns true if
+    //a new policy is now in use
+    synchronized boolean reload() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (loaded != null && modified == seenModified
+                && length == seenLength) {
+            return false;
+        }
+        seenModified = modified;
+        seenLength = length;
+        int version = loaded == null ? 0 : loaded.version;
+        try {
+            GreedyPolicy policy = loadPolicy(file);
+            loaded = new Loaded(policy, version + 1);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Keeping policy " + version + ": "
+                    + e.getMessage());
+            return false;
+        }
+    }
+
+    public void serve(int port, final long reloadMillis,
+            final long statsMillis) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool(
+                daemons("policy-connection"));
+        Thread reloader = daemons("policy-reloader").newThread(new Runnable() {
+            public void run() {
+                while (true) {
+                    sleep(reloadMillis);
+                    if (reload()) {
+                        System.out.println("Loaded policy "
+                                + loaded.version + " from " + file);
+                    }
+                }
+            }
+        });
+        reloader.start();
+        if (statsMillis > 0) {
+            daemons("policy-stats").newThread(new Runnable() {
+                public void run() {
+                    while (true) {
+                        sleep(statsMillis);
+                        report(statsMillis);
+                    }
+                }
+            }).start();
+        }
+
+        ServerSocket server = new ServerSocket(
+                port, 50, InetAddress.getLoopbackAddress());
+        System.out.println("Serving policy " + loaded.version + " from "
+                + file + " on " + server.getLocalSocketAddress());
+        try {
+            while (true) {
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            answer(socket);
+                        } catch (IOException e) {
+                            System.out.println("Connection dropped: "
+                                    + e.getMessage());
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException ignored) {}
+                        }
+                    }
+                });
+            }
+        } finally {
+            server.close();
+            connections.shutdownNow();
+        }
+    }
+
+    //Answer batches from one client until it hangs up
+    private void answer(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                socket.getInputStream(), 1 << 16));
+        OutputStream out = new BufferedOutputStream(
+                socket.getOutputStream(), 1 << 16);
+        byte[] request = new byte[0];
+        byte[] reply = new byte[8];
+        while (true) {
+            int n;
+            try {
+                n = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if (n < 0 || n > MAX_BATCH) {
+                throw new IOException("batch of " + n + " requests");
+            }
+            if (request.length < n * REQUEST_BYTES) {
+                request = new byte[n * REQUEST_BYTES];
+            }
+            if (reply.length < 8 + n * REPLY_BYTES) {
+                reply = new byte[8 + n * REPLY_BYTES];
+            }
+            in.readFully(request, 0, n * REQUEST_BYTES);
+
+            long start = System.nanoTime();
+            Loaded current = loaded;
+            ByteBuffer requests = ByteBuffer.wrap(request);
+            ByteBuffer replies = ByteBuffer.wrap(reply);
+            replies.putInt(n);
+            replies.putInt(current.version);
+            for (int i = 0; i < n; i++) {
+                int intersection = requests.getInt();
+                int state = requests.getInt();
+                int delay = requests.get();
+                replies.putInt(intersection);
+                replies.put((byte) (delay == 0
+                        && current.policy.switchLight(state) ? 1 : 0));
+            }
+            out.write(reply, 0, 8 + n * REPLY_BYTES);
+            out.flush();
+            latency.record(System.nanoTime() - start);
+            decisions.addAndGet(n);
+        }
+    }
+
+    private void report(long millis) {
+        LatencyHistogram period = latency.drain();
+        long batches = period.count();
+        long answered = decisions.getAndSet(0);
+        System.out.println(String.format(
+                "policy %d | %.0f decisions/s in %.0f batches/s | %s",
+                loaded.version, answered * 1000.0 / millis,
+                batches * 1000.0 / millis, period.summary()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Loaded {
+        final GreedyPolicy policy;
+        final int version;
+
+        Loaded(GreedyPolicy policy, int version) {
+            this.policy = policy;
+            this.version = version;
+        }
+    }
+
+    static ThreadFactory daemons(final String name) {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java PolicyServer <policy or q-table file>");
+            System.exit(-1);
+        }
+        int port = Integer.getInteger("port", DEFAULT_PORT);
+        long reloadMillis = Long.getLong("reload.millis", 1000);
+        long statsMillis = 1000 * Long.getLong("stats.seconds", 10);
+        try {
+            new PolicyServer(new File(args[0]))
+                    .serve(port, reloadMillis, statsMillis);
+        } catch (IOException e) {
+            System.out.println("Policy server stopped: " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+
+import interfaces.QTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+//Binary file holding a trained learning module: a fixed header followed
+//by the q-table as three packed arrays. Everything is big-endian.
+//
+//  int   magic ("QTBL")
+//  int   version
+//  int   state encoder (the reward function whose state codes the keys use)
+//  int   actionPosition
+//  float alpha, gamma, epsilon
+//  int   entry count n
+//  int[n] keys, float[n] values, int[n] visits
+//
+//Loading maps the file and reads the arrays in bulk, so there is no
+//object stream and no per-entry boxing.
+public class QTableCheckpoint {
+    static final int MAGIC = 0x5154424C;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8 * 4;
+
+    private final int stateEncoder;
+    private final LearningModuleImpl learningModule;
+
+    private QTableCheckpoint(int stateEncoder,
+            LearningModuleImpl learningModule) {
+        this.stateEncoder = stateEncoder;
+        this.learningModule = learningModule;
+    }
+
+    //Written to file.tmp and then renamed over file, so a crash leaves
+    //the previous table behind and a PolicyServer reloading file never
+    //sees one half written
+    public static void save(File file, int stateEncoder,
+            LearningModuleImpl learningModule) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 1 << 16));
+        try {
+            write(out, stateEncoder, learningModule,
+                    learningModule.getQTable());
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    //Writes learningModule's parameters with the given table, which may
+    //be a snapshot taken earlier rather than the module's live table
+    static void write(DataOutputStream out, int stateEncoder,
+            LearningModuleImpl learningModule, QTable table)
+            throws IOException {
+        final int n = table.size();
+        final int[] keys = new int[n];
+        final float[] values = new float[n];
+        final int[] visits = new int[n];
+        table.forEach(new QTable.EntryVisitor() {
+            int i;
+            public void visit(int key, float value, int count) {
+                keys[i] = key;
+                values[i] = value;
+                visits[i] = count;
+                i++;
+            }
+        });
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(stateEncoder);
+        out.writeInt(learningModule.getActionPosition());
+        out.writeFloat(learningModule.getAlpha());
+        out.writeFloat(learningModule.getGamma());
+        out.writeFloat(learningModule.getEpsilon());
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeInt(keys[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeFloat(values[i]);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeInt(visits[i]);
+        }
+    }
+
+    public static QTableCheckpoint load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            QTableCheckpoint checkpoint = read(buffer, file.toString());
+            if (buffer.hasRemaining()) {
+                throw new IOException(file + " has trailing bytes");
+            }
+            return checkpoint;
+        } finally {
+            raf.close();
+        }
+    }
+
+    //Reads a checkpoint starting at buffer's position, leaving the
+    //position just after it
+    static QTableCheckpoint read(ByteBuffer buffer, String name)
+            throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(name + " is not a q-table checkpoint");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(name + " has checkpoint version "
+                    + version + ", expected " + VERSION);
+        }
+        int stateEncoder = buffer.getInt();
+        int actionPosition = buffer.getInt();
+        float alpha = buffer.getFloat();
+        float gamma = buffer.getFloat();
+        float epsilon = buffer.getFloat();
+        int n = buffer.getInt();
+        if (n < 0 || buffer.remaining() < 12L * n) {
+            throw new IOException(name + " is truncated");
+        }
+        if (actionPosition != Simulation.actionPosition(stateEncoder)) {
+            throw new IOException(name + " is corrupt");
+        }
+
+        int[] keys = new int[n];
+        float[] values = new float[n];
+        int[] visits = new int[n];
+        buffer.asIntBuffer().get(keys);
+        buffer.position(buffer.position() + 4 * n);
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + 4 * n);
+        buffer.asIntBuffer().get(visits);
+        buffer.position(buffer.position() + 4 * n);
+
+        int keyRange = LearningModuleImpl.keyRange(actionPosition);
+        QTable table = LearningModuleImpl.newQTable(actionPosition);
+        for (int i = 0; i < n; i++) {
+            if (keys[i] < 0 || keys[i] >= keyRange) {
+                throw new IOException(name + " is corrupt");
+            }
+            table.set(keys[i], values[i], visits[i]);
+        }
+        LearningModuleImpl learningModule =
+                new LearningModuleImpl(actionPosition);
+        learningModule.setRLParam(alpha, gamma, epsilon);
+        learningModule.setQTable(table);
+        return new QTableCheckpoint(stateEncoder, learningModule);
+    }
+
+    //The reward function whose state codes the table was trained on
+    public int getStateEncoder() {
+        return stateEncoder;
+    }
+
+    public LearningModuleImpl getLearningModule() {
+        return learningModule;
+    }
+}
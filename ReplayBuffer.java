@@ -0,0 +1,95 @@
+import interfaces.LearningModule;
+import utils.Rng;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//The most recent q-learning transitions, so training can learn from each
+//one more than once. They are kept outside the Java heap in one direct
+//buffer, 16 bytes each, so millions of them cost the garbage collector
+//nothing; once it is full each new transition overwrites the oldest.
+//Minibatches are drawn uniformly, with replacement, into arrays the
+//buffer owns, so replaying allocates nothing either.
+public class ReplayBuffer {
+    private static final int BYTES = 16;
+
+    private final ByteBuffer transitions;
+    private final int capacity;
+    private final Rng rand;
+    //where the next transition goes, and how many are held
+    private int next;
+    private int size;
+
+    //one minibatch, handed to LearningModule.learn
+    private final int[] states;
+    private final boolean[] switches;
+    private final int[] rewards;
+    private final int[] nextStates;
+
+    ReplayBuffer(int capacity, int batchSize, Rng rand) {
+        if (capacity < 1 || capacity > Integer.MAX_VALUE / BYTES) {
+            throw new IllegalArgumentException(
+                    "Cannot hold " + capacity + " transitions");
+        }
+        this.capacity = capacity;
+        this.rand = rand;
+        transitions = ByteBuffer.allocateDirect(capacity * BYTES)
+                .order(ByteOrder.nativeOrder());
+        states = new int[batchSize];
+        switches = new boolean[batchSize];
+        rewards = new int[batchSize];
+        nextStates = new int[batchSize];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    public void add(int state, boolean switched, int reward, int nextState) {
+        int at = next * BYTES;
+        transitions.putInt(at, state);
+        transitions.putInt(at + 4, switched ? 1 : 0);
+        transitions.putInt(at + 8, reward);
+        transitions.putInt(at + 12, nextState);
+        next = next + 1 == capacity ? 0 : next + 1;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    //The first count transitions of a learn call
+    public void add(int[] pastStates, boolean[] switched, int[] rewards,
+            int[] newStates, int count) {
+        for (int i = 0; i < count; i++) {
+            add(pastStates[i], switched[i], rewards[i], newStates[i]);
+        }
+    }
+
+    //Have module learn from batches minibatches drawn from the buffer;
+    //does nothing while it is empty
+    public void replay(LearningModule module, int batches) {
+        if (size == 0) {
+            return;
+        }
+        for (int b = 0; b < batches; b++) {
+            for (int i = 0; i < states.length; i++) {
+                int at = rand.nextInt(size) * BYTES;
+                states[i] = transitions.getInt(at);
+                switches[i] = transitions.getInt(at + 4) != 0;
+                rewards[i] = transitions.getInt(at + 8);
+                nextStates[i] = transitions.getInt(at + 12);
+            }
+            module.learn(states, switches, rewards, nextStates,
+                    states.length);
+        }
+    }
+}
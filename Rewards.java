@@ -0,0 +1,170 @@
+//The reward functions a LearningModule learns from, worked out from a
+//light's state code alone, so anything stepping a simulation can use
+//them without a module of its own
+final class Rewards {
+    private Rewards() {
+    }
+
+    //The reward for stateCode under the given reward function, as
+    //Simulation numbers them
+    static int of(int rewardFunction, int stateCode) {
+        switch (rewardFunction) {
+            case 2:
+                return reward2(stateCode);
+            case 3:
+                return reward3(stateCode);
+            default:
+                return reward(stateCode);
+        }
+    }
+
+    //Reward -1.0 if a car is stopped at a red light on either road, 
+    //zero otherwise.
+    static int reward(int stateCode) {
+        //__1__ = horizontal green
+        // 0____ = car at 0 on horizontal
+        //_0___ = car at 0 on vertical
+        // hence 0_0__ = car stopped at horizontal road
+        // hence _01__ = car stopped at vertical road
+
+        int rewardNum;
+
+        // If it's 1 digit both roads have a car at 0
+        if (stateCode / 10 == 0) {
+            rewardNum = -2;
+        // If it's 2 digits horizontal road has car at 0
+        // Hence we check if the light is 0 (red for horizontal)
+        } else if (stateCode / 100 == 0 && stateCode % 10 == 0) {
+            rewardNum = -1;
+        // Else if the second digit is 0 there's a car at the
+        // vertical road
+        // Hence we check if the light is 1 (red for vertical)
+        } else if (stateCode/10 % 10 == 0 && stateCode % 10 == 1) {
+            rewardNum = -1;
+        } else {
+            rewardNum = 0;
+        }
+
+        return rewardNum;
+    }
+
+    //Reward -1*numCars stopped at a red light, + numCars queued up
+    //going through a greenlight
+    static int reward2(int stateCode) {
+        //__1__ = horizontal green
+        // 0____ = car at 0 on horizontal
+        //_0___ = car at 0 on vertical
+        // hence 0_0__ = car stopped at horizontal road
+        // hence _01__ = car stopped at vertical road
+
+        int rewardNum;
+        // If it's 1 digit both roads have 0 cars stopped
+        if (stateCode / 10 == 0) {
+            rewardNum = 0;
+        // If it's 2 digits horizontal road has 0 cars queued up
+        // Hence if light is red for vertical, we check how many 
+        // are in the vertical position
+        } else if (stateCode / 100 == 0 && stateCode % 10 != 0) {
+            rewardNum = 
+                    stateCode % 10 == 1 ? -1 :
+                    stateCode % 10 == 2 ? -2 :
+                            -100;
+        // Else if the second digit is 0 there's a car at the 
+        // vertical road
+        // Hence we check if the light is 1 (red for vertical)
+        } else {
+            // If the traffic light is red for horizontal we add on 
+            // how many cars are stopped horizontally
+            // And positive how many are queued up vertically
+            if (stateCode % 10 != 1) {
+                rewardNum = -(stateCode/100) + stateCode/10%10;
+            }	
+            // If traffic light is red for vertical we add on negative 
+            // how many cars are stopped vertically
+            // And positive how many are queued up horizontally
+            else if (stateCode % 10 == 1) {
+                rewardNum = -(stateCode / 10 % 10) + stateCode/100;
+                // Else if amber both directions are stopped
+            } else if (stateCode%10 == 2) {
+                rewardNum = -(stateCode / 10 % 10) - stateCode/100;
+            } else {
+                rewardNum = 0;
+            }
+        }
+
+        return rewardNum;
+    }
+
+    //Reward -1*numCars stopped at a red light, + numCars queued up
+    //going through a greenlight. However minus 20 if there's a car 
+    //directly on the other side of the intersection (i.e. not letting
+    //our car move)
+    static int reward3(int stateCode) {
+        //__1__ = horizontal green
+        // 0____ = car at 0 on horizontal
+        //_0___ = car at 0 on vertical
+        // hence 0_0__ = car stopped at horizontal road
+        // hence _01__ = car stopped at vertical road
+
+        int rewardNum = 0;
+
+        // work these out then mod by 1000%
+        // if it's 4 digits then horizontally is bad to be 
+        // horizontal (0____) 
+        if (stateCode/1000 == 0) {
+            // if light is currently 1 - green horizontal, and action is 
+            // 0 = bad. if light is currently 0 - red horizontal, 
+            // and action is 1 = bad
+            if (stateCode%10 == 1) {
+                rewardNum -= 10;
+            }
+        // if it's 3 digits it's bad to be either    		
+        } else if (stateCode/100 == 0) {
+            rewardNum -= 10;
+        // if it's 5 digits with _0___ then it's bad to be vertical
+        } else if ((stateCode/100)%10 == 0) {
+            if (stateCode%10 == 0) {
+                rewardNum -= 10;
+            }
+        }
+
+        // Now we're working with 3 digits, like before
+        stateCode %= 1000;
+
+        // If it's 1 digit both roads have 0 cars stopped
+        if (stateCode / 10 == 0) {
+            rewardNum += 0;
+        // If it's 2 digits horizontal road has 0 cars queued up
+        // Hence if light is red for vertical, we check how many
+        // are in the vertical position
+        } else if (stateCode/100 == 0) {
+            if ((stateCode)%10 == 1 || (stateCode%10) == 2) {
+                rewardNum -= (stateCode/10);
+            }
+        // Else if the second digit is 0 there's a car at the
+        // vertical road. Hence we check if the light is 1 
+        // (red for vertical)
+        } else {
+            // If the traffic light is red for horizontal we add on 
+            // how many cars are stopped horizontally
+            // And positive how many are queued up vertically
+            if (stateCode%10 == 0|| (stateCode%10) == 2) {
+                rewardNum -=  (stateCode/100);
+                rewardNum += (stateCode/10)%10;
+            }	
+            // If traffic light is red for vertical we add on 
+            // negative how many cars are stopped vertically
+            // And positive how many are queued up horizontally
+            else if (stateCode%10 == 1) {
+                rewardNum -= ((stateCode/10)%10);
+                rewardNum += stateCode/100;
+            // Else if amber both directions are stopped
+            } else if (stateCode%10 == 2) {
+                rewardNum -= ((stateCode/10)%10);
+                rewardNum -= (stateCode/100);
+            }
+        }
+
+        return rewardNum;
+    }
+}
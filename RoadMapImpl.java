@@ -1,29 +1,20 @@
 
 import interfaces.Car;
+import interfaces.CarIndex;
 import interfaces.RoadMap;
 import interfaces.Action;
 import interfaces.TrafficLight;
 import utils.Coords;
+import utils.Direction;
 import utils.Velocity;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 //Roadmap Implementation class -
 //implements methods from interfaces.RoadMap
 public class RoadMapImpl implements RoadMap {
-    public final int gridSize = 60;
-    private final Coords[] defaultEntrances = {
-        		new Coords(19, 0),
-        		new Coords(39, 0),
-                new Coords(59, 19),
-                new Coords(59, 39),
-	            new Coords(41, 59),
-	            new Coords(21, 59),
-                new Coords(0, 41),
-                new Coords(0, 21)        
-        };
+    public final int width;
+    public final int height;
     
     private final int[] id = { 
     		0,1,2,3,4,5,6,7
@@ -31,28 +22,29 @@ public class RoadMapImpl implements RoadMap {
     private final char carChar = 'C';
     private final int roadChar = ' ';
     private char[][] grid;
-    private List<Coords> roadEntrances = new ArrayList<Coords>();
+    private List<Coords> roadEntrances;
 
     RoadMapImpl() {
-        Collections.addAll(roadEntrances, defaultEntrances);
-        grid = new char[gridSize][gridSize];
-        for (int i = 0; i < gridSize; i++) {
-            for (int j = 0; j < gridSize; j++) {
-                grid[j][i] = 'x';
-                for (Coords k : roadEntrances) {
-                    if ((0 < i && i < gridSize-1 && i == k.getX()) || 
-                        (0 < j && j < gridSize-1 && j == k.getY()))
-                    {
-                        grid[j][i] = roadChar;
-                    }
-                }
+        this(Scenario.defaultScenario());
+    }
+
+    RoadMapImpl(Scenario scenario) {
+        width = scenario.getWidth();
+        height = scenario.getHeight();
+        roadEntrances = scenario.getRoadEntrances();
+        grid = new char[height][width];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                grid[j][i] = scenario.roadAt(i, j) ? (char) roadChar : 'x';
             }
         }
     }
 
-    public RoadMapImpl(char[][] newGrid) {
-        grid = copyGrid(newGrid);
-        Collections.addAll(roadEntrances, defaultEntrances);
+    private RoadMapImpl(RoadMapImpl other) {
+        width = other.width;
+        height = other.height;
+        grid = copyGrid(other.grid);
+        roadEntrances = other.roadEntrances;
     }
 
     @Override
@@ -60,7 +52,7 @@ public class RoadMapImpl implements RoadMap {
         //copy grid and place cars onto it
         char[][] newGrid = copyGrid(grid);
         for (Car car : cars) {
-            int y = car.getCoords().getX(), x = car.getCoords().getY();
+            int x = car.getCoords().getX(), y = car.getCoords().getY();
             int dx = car.getDirection().getXSpeed();
             int dy = car.getDirection().getYSpeed();
             newGrid[y][x] = 
@@ -78,8 +70,8 @@ public class RoadMapImpl implements RoadMap {
         }
 
         //print new grid to screen
-        for (int i = 0; i < gridSize; i++) {
-            for (int j = 0; j < gridSize; j++) {
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
                 System.out.print(newGrid[i][j]);
             }
             System.out.println();
@@ -245,6 +237,11 @@ public class RoadMapImpl implements RoadMap {
     // Needs to take in traffic light so it can tell which one to work
     // the things out for
     public int stateCode3(TrafficLight t, List<Car> cars) {
+        return stateCode3(t, new CarListIndex(cars));
+    }
+
+    @Override
+    public int stateCode3(TrafficLight t, CarIndex cars) {
         int hash = 0;
         boolean room = true;
         
@@ -264,15 +261,11 @@ public class RoadMapImpl implements RoadMap {
         Coords c = new Coords(t.getCoords()).left().up();  
         c.setY(c.getY()-1);  
         if (carAt(c)) {
-        	for (Car car: cars) {
-        		if (car.getCoords() == c) {
-        			if (!roomToCrossIntersection(
-                            c, car.getDirection(), t)) {
-                    	room = false;
-                    }
-        			break;
-        		}
-        	}
+        	int direction = cars.directionAt(c.getX(), c.getY());
+        	if (direction != Direction.NONE && !roomToCrossIntersection(
+                    c.getX(), c.getY(), direction, t)) {
+            	room = false;
+            }
         }
         while (carAt(c)) {
         	i++;
@@ -285,15 +278,11 @@ public class RoadMapImpl implements RoadMap {
         c = new Coords(t.getCoords()).right().down();
         c.setY(c.getY()+1);
         if (carAt(c)) {
-        	for (Car car: cars) {
-        		if (car.getCoords() == c) {
-        			if (!roomToCrossIntersection(
-                            c, car.getDirection(), t)) {
-                    	room = false;
-                    }
-        			break;
-        		}
-        	}
+        	int direction = cars.directionAt(c.getX(), c.getY());
+        	if (direction != Direction.NONE && !roomToCrossIntersection(
+                    c.getX(), c.getY(), direction, t)) {
+            	room = false;
+            }
         }
         
         while (carAt(c)) {
@@ -316,15 +305,11 @@ public class RoadMapImpl implements RoadMap {
         c = new Coords(t.getCoords()).left().down();
         c.setX(c.getX()-1);
         if (carAt(c)) {
-        	for (Car car: cars) {
-        		if (car.getCoords() == c) {
-        			if (!roomToCrossIntersection(
-                            c, car.getDirection(), t)) {
-                    	room = false;
-                    }
-        			break;
-        		}
-        	}
+        	int direction = cars.directionAt(c.getX(), c.getY());
+        	if (direction != Direction.NONE && !roomToCrossIntersection(
+                    c.getX(), c.getY(), direction, t)) {
+            	room = false;
+            }
         }
         
         while(carAt(c)) {
@@ -338,15 +323,11 @@ public class RoadMapImpl implements RoadMap {
         c = new Coords(t.getCoords()).right().up();
         c.setX(c.getX()+1);
         if (carAt(c)) {
-        	for (Car car: cars) {
-        		if (car.getCoords() == c) {
-        			if (!roomToCrossIntersection(
-                            c, car.getDirection(), t)) {
-                    	room = false;
-                    }
-        			break;
-        		}
-        	}
+        	int direction = cars.directionAt(c.getX(), c.getY());
+        	if (direction != Direction.NONE && !roomToCrossIntersection(
+                    c.getX(), c.getY(), direction, t)) {
+            	room = false;
+            }
         }
         while(carAt(c)) {
             i++;
@@ -385,6 +366,13 @@ public class RoadMapImpl implements RoadMap {
         return blankRoadTiles >= 4;
     }
 
+    @Override
+    public boolean roomToCrossIntersection(
+            int x, int y, int direction, TrafficLight l) {
+        return roomToCrossIntersection(
+                new Coords(x, y), velocity(direction), l);
+    }
+
     @Override
     public TrafficLight getClosestTrafficLight(
             Car car, List<TrafficLight> trafficLights
@@ -394,7 +382,7 @@ public class RoadMapImpl implements RoadMap {
         Coords coords = new Coords(
             car.getCoords().getX(), car.getCoords().getY());
         while (coords.getX() >=0 && coords.getY() >= 0 &&
-                coords.getX() < 60 && coords.getY() < 60
+                coords.getX() < width && coords.getY() < height
         ) {
             for (TrafficLight t : trafficLights) {
                 if (coords.equals(
@@ -408,6 +396,15 @@ public class RoadMapImpl implements RoadMap {
         return trafficLights.get(0);
     }
 
+    @Override
+    public TrafficLight getClosestTrafficLight(
+            int x, int y, int direction, List<TrafficLight> trafficLights
+    ) {
+        return getClosestTrafficLight(
+                new CarImpl(new Coords(x, y), velocity(direction)),
+                trafficLights);
+    }
+
     @Override
     public List<Coords> getRoadEntrances() {
         return roadEntrances;
@@ -417,14 +414,14 @@ public class RoadMapImpl implements RoadMap {
     public Velocity getStartingVelocity(Coords roadEntrance) {
         int x = roadEntrance.getX(), y = roadEntrance.getY();
         return new Velocity(
-            y == 0 || y == gridSize - 1 ? 0 : x == 0 ? 1 : -1,
-            x == 0 || x == gridSize - 1 ? 0 : y == 0 ? 1 : -1
+            y == 0 || y == height - 1 ? 0 : x == 0 ? 1 : -1,
+            x == 0 || x == width - 1 ? 0 : y == 0 ? 1 : -1
         );
     }
 
     @Override
     public RoadMap copyMap() {
-        return new RoadMapImpl(grid);
+        return new RoadMapImpl(this);
     }
 
     @Override
@@ -435,6 +432,29 @@ public class RoadMapImpl implements RoadMap {
         }
     }
 
+    @Override
+    public void addCar(Coords coords) {
+        addCar(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public void addCar(int x, int y) {
+        grid[y][x] = carChar;
+    }
+
+    @Override
+    public void removeCar(Coords coords) {
+        removeCar(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public void removeCar(int x, int y) {
+        //cars only ever drive on road squares
+        if (carAt(x, y)) {
+            grid[y][x] = (char) roadChar;
+        }
+    }
+
     @Override
     public boolean nextNonCarSquareIsTrafficLight(
             Coords start, 
@@ -447,8 +467,8 @@ public class RoadMapImpl implements RoadMap {
         Coords trafficLightCoords = 
                 trafficLightCoords(direction, trafficLight);
 
-        while (current.getX() < gridSize && current.getX() >= 0 &&
-                current.getY() < gridSize && current.getY() >= 0 &&
+        while (current.getX() < width && current.getX() >= 0 &&
+                current.getY() < height && current.getY() >= 0 &&
                 carAt(current) &&
                 !trafficLightCoords.equals(current)) {
             current.setX(current.getX() + direction.getXSpeed());
@@ -457,30 +477,50 @@ public class RoadMapImpl implements RoadMap {
         return trafficLightCoords.equals(current);
     }
 
+    @Override
+    public boolean nextNonCarSquareIsTrafficLight(
+            int x, int y, int direction, TrafficLight trafficLight) {
+        return nextNonCarSquareIsTrafficLight(
+                new Coords(x, y), velocity(direction), trafficLight);
+    }
+
     @Override
     public boolean carAt(Coords coords) {
+        return carAt(coords.getX(), coords.getY());
+    }
 
+    @Override
+    public boolean carAt(int x, int y) {
         return  
-            0 <= coords.getX() && coords.getX() < gridSize &&
-            0 <= coords.getY() && coords.getY() < gridSize &&
-            grid[coords.getY()][coords.getX()] == carChar;
+            0 <= x && x < width &&
+            0 <= y && y < height &&
+            grid[y][x] == carChar;
     }
     
     public boolean roadAt(Coords coords) {
+        return roadAt(coords.getX(), coords.getY());
+    }
+
+    @Override
+    public boolean roadAt(int x, int y) {
         return  
-            0 <= coords.getX() && coords.getX() < gridSize &&
-            0 <= coords.getY() && coords.getY() < gridSize &&
-            grid[coords.getY()][coords.getX()] == roadChar;
+            0 <= x && x < width &&
+            0 <= y && y < height &&
+            grid[y][x] == roadChar;
+    }
+
+    private static Velocity velocity(int direction) {
+        return new Velocity(Direction.dx(direction), Direction.dy(direction));
     }
 
     private char[][] copyGrid(char[][] grid)
     {
-        char[][] newGrid = new char[gridSize][gridSize];
+        char[][] newGrid = new char[height][width];
 
         //explicit copy so array is not a reference to previous array
-        for (int i = 0; i < gridSize; i++)
+        for (int i = 0; i < height; i++)
         {
-            System.arraycopy(grid[i], 0, newGrid[i], 0, gridSize);
+            System.arraycopy(grid[i], 0, newGrid[i], 0, width);
         }
         return newGrid;
     }
@@ -0,0 +1,255 @@
+
+import interfaces.TrafficLight;
+import utils.Coords;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//The road network a simulation runs on: the size of the map, where cars
+//enter it and where the traffic lights are. Read once from a scenario
+//file and never changed afterwards, so every simulation and map built
+//from it can share its tables.
+//
+//A scenario file is a list of directives, one per line ('#' starts a
+//comment):
+//
+//  size W H          map of W x H squares
+//  roads-x X...      two-lane roads running down the map, centred on
+//                    column X (lanes at X-1 going down and X+1 going up)
+//  roads-y Y...      two-lane roads running across the map, centred on
+//                    row Y (lanes at Y+1 going right and Y-1 going left)
+//  grid C R S        C x R evenly spaced roads S squares apart, with the
+//                    map sized to fit (replaces size/roads-x/roads-y)
+//  entrance X Y      a single lane entering at (X, Y) on the map's edge
+//  light X Y h|v     a light at (X, Y), starting green across (h) or
+//                    down (v) the map
+//
+//Every road gets an entrance at each end. If no light is given, every
+//crossing of two roads gets one, alternating their starting phases.
+public class Scenario {
+    private final int width;
+    private final int height;
+    private final List<Coords> roadEntrances;
+    private final Coords[] lights;
+    private final boolean[] lightsHorizontalGreen;
+    //road[y * width + x]
+    private final boolean[] road;
+
+    Scenario(int width, int height, List<Coords> roadEntrances,
+            List<Coords> lights, List<Boolean> lightsHorizontalGreen) {
+        if (width < 3 || height < 3) {
+            throw new IllegalArgumentException(
+                    "Scenario must be at least 3x3, not " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        for (Coords entrance : roadEntrances) {
+            int x = entrance.getX(), y = entrance.getY();
+            if (!inside(x, y) ||
+                    (x != 0 && y != 0 && x != width - 1 && y != height - 1)) {
+                throw new IllegalArgumentException(
+                        "Entrance " + x + "," + y + " is not on the map's edge");
+            }
+        }
+        this.roadEntrances = Collections.unmodifiableList(
+                new ArrayList<Coords>(roadEntrances));
+        this.lights = lights.toArray(new Coords[0]);
+        this.lightsHorizontalGreen = new boolean[lights.size()];
+        for (int i = 0; i < lights.size(); i++) {
+            if (!inside(lights.get(i).getX(), lights.get(i).getY())) {
+                throw new IllegalArgumentException("Light " + i + " is off the map");
+            }
+            this.lightsHorizontalGreen[i] = lightsHorizontalGreen.get(i);
+        }
+
+        //A square is road if it is in the column or row of an entrance,
+        //not counting the map's border in that direction
+        road = new boolean[width * height];
+        for (Coords entrance : roadEntrances) {
+            int x = entrance.getX(), y = entrance.getY();
+            if (0 < x && x < width - 1) {
+                for (int j = 0; j < height; j++) {
+                    road[j * width + x] = true;
+                }
+            }
+            if (0 < y && y < height - 1) {
+                for (int i = 0; i < width; i++) {
+                    road[y * width + i] = true;
+                }
+            }
+        }
+    }
+
+    //The original 60x60 map: two roads each way, crossing at four lights
+    static Scenario defaultScenario() {
+        try {
+            return parse(new StringReader(
+                    "size 60 60\n" +
+                    "roads-x 20 40\n" +
+                    "roads-y 20 40\n"), "default");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static Scenario load(File file) throws IOException {
+        return parse(new FileReader(file), file.toString());
+    }
+
+    static Scenario parse(Reader reader, String name) throws IOException {
+        int width = 0, height = 0;
+        List<Integer> roadsX = new ArrayList<Integer>();
+        List<Integer> roadsY = new ArrayList<Integer>();
+        List<Coords> entrances = new ArrayList<Coords>();
+        List<Coords> lights = new ArrayList<Coords>();
+        List<Boolean> horizontalGreen = new ArrayList<Boolean>();
+
+        BufferedReader in = new BufferedReader(reader);
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] words = line.trim().split("\\s+");
+                if (words[0].isEmpty()) {
+                    continue;
+                }
+                try {
+                    String directive = words[0];
+                    if (directive.equals("size")) {
+                        width = number(words, 1);
+                        height = number(words, 2);
+                    } else if (directive.equals("roads-x")) {
+                        for (int i = 1; i < words.length; i++) {
+                            roadsX.add(number(words, i));
+                        }
+                    } else if (directive.equals("roads-y")) {
+                        for (int i = 1; i < words.length; i++) {
+                            roadsY.add(number(words, i));
+                        }
+                    } else if (directive.equals("grid")) {
+                        int columns = number(words, 1);
+                        int rows = number(words, 2);
+                        int spacing = number(words, 3);
+                        roadsX.clear();
+                        roadsY.clear();
+                        for (int i = 1; i <= columns; i++) {
+                            roadsX.add(i * spacing);
+                        }
+                        for (int j = 1; j <= rows; j++) {
+                            roadsY.add(j * spacing);
+                        }
+                        width = (columns + 1) * spacing;
+                        height = (rows + 1) * spacing;
+                    } else if (directive.equals("entrance")) {
+                        entrances.add(
+                                new Coords(number(words, 1), number(words, 2)));
+                    } else if (directive.equals("light")) {
+                        lights.add(
+                                new Coords(number(words, 1), number(words, 2)));
+                        if (words.length < 4 ||
+                                !(words[3].equals("h") || words[3].equals("v"))) {
+                            throw new IllegalArgumentException(
+                                    "light needs a phase of h or v");
+                        }
+                        horizontalGreen.add(words[3].equals("h"));
+                    } else {
+                        throw new IllegalArgumentException(
+                                "unknown directive " + directive);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(
+                            name + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            in.close();
+        }
+
+        //Each road enters from both ends, in the same order as the
+        //original map: down, left, up, then right
+        List<Coords> roadEnds = new ArrayList<Coords>();
+        for (int x : roadsX) {
+            roadEnds.add(new Coords(x - 1, 0));
+        }
+        for (int y : roadsY) {
+            roadEnds.add(new Coords(width - 1, y - 1));
+        }
+        for (int i = roadsX.size() - 1; i >= 0; i--) {
+            roadEnds.add(new Coords(roadsX.get(i) + 1, height - 1));
+        }
+        for (int i = roadsY.size() - 1; i >= 0; i--) {
+            roadEnds.add(new Coords(0, roadsY.get(i) + 1));
+        }
+        roadEnds.addAll(entrances);
+
+        if (lights.isEmpty()) {
+            for (int i = 0; i < roadsX.size(); i++) {
+                for (int j = 0; j < roadsY.size(); j++) {
+                    lights.add(new Coords(roadsX.get(i), roadsY.get(j)));
+                    horizontalGreen.add((i + j) % 2 == 1);
+                }
+            }
+        }
+
+        try {
+            return new Scenario(width, height, roadEnds, lights, horizontalGreen);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int number(String[] words, int i) {
+        if (i >= words.length) {
+            throw new IllegalArgumentException(
+                    words[0] + " is missing a number");
+        }
+        return Integer.parseInt(words[i]);
+    }
+
+    private boolean inside(int x, int y) {
+        return 0 <= x && x < width && 0 <= y && y < height;
+    }
+
+    //A fresh set of lights in their starting phases; every simulation
+    //needs its own, since lights change as it runs
+    public List<TrafficLight> newTrafficLights() {
+        List<TrafficLight> trafficLights = new ArrayList<TrafficLight>();
+        for (int i = 0; i < lights.length; i++) {
+            trafficLights.add(new TrafficLightImpl(
+                    new Coords(lights[i]), lightsHorizontalGreen[i]));
+        }
+        return trafficLights;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public List<Coords> getRoadEntrances() {
+        return roadEntrances;
+    }
+
+    public int getNumTrafficLights() {
+        return lights.length;
+    }
+
+    public boolean roadAt(int x, int y) {
+        return inside(x, y) && road[y * width + x];
+    }
+}
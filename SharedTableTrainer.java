@@ -0,0 +1,98 @@
+
+import interfaces.QTable;
+import utils.Rng;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+//Trains one learning module with several simulations that all learn
+//into the same q-table at the same time. Unlike ParallelTrainer there is
+//no merging: every replica's updates land in one lock-free AtomicQTable
+//as soon as they are made, and every replica acts on the others' updates
+//straight away.
+public class SharedTableTrainer {
+    private final Scenario scenario;
+    private final int rewardFunction;
+    private final int replicas;
+    private final Rng rand;
+    private long totalCarsStopped;
+
+    SharedTableTrainer(Scenario scenario, int rewardFunction, int replicas,
+            Rng rand) {
+        this.scenario = scenario;
+        this.rewardFunction = rewardFunction;
+        this.replicas = replicas;
+        this.rand = rand;
+    }
+
+    //Trains learningModule for trainingTime ticks in total, shared out
+    //between the replicas, each stepping the intensity from 0.2 up to
+    //1.0 in five equal parts
+    public void train(LearningModuleImpl learningModule, int trainingTime) {
+        final int ticks = trainingTime / replicas;
+        final int intensityInterval = Math.max(1, ticks / 5);
+        int actionPosition = learningModule.getActionPosition();
+
+        final AtomicQTable shared = new AtomicQTable(2 * actionPosition);
+        copyInto(learningModule.getQTable(), shared);
+
+        List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+        for (int r = 0; r < replicas; r++) {
+            Rng stream = rand.split();
+            LearningModuleImpl module = learningModule.replicate(stream.split());
+            module.setQTable(shared);
+            final Simulation simulation =
+                    new Simulation(scenario, rewardFunction, module, stream);
+            tasks.add(new Callable<Long>() {
+                public Long call() {
+                    long carsStopped = 0;
+                    for (int t = 0; t < ticks; t++) {
+                        if (t % intensityInterval == 0) {
+                            int part = Math.min(t / intensityInterval, 4);
+                            simulation.setTrafficIntensity(0.2 * (part + 1));
+                        }
+                        carsStopped += simulation.step(true);
+                    }
+                    return carsStopped;
+                }
+            });
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(replicas);
+        try {
+            for (Future<Long> result : pool.invokeAll(tasks)) {
+                totalCarsStopped += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Training interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Training replica failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        //Hand back an ordinary table so the module saves and looks up
+        //values the same way as after single threaded training
+        QTable trained = LearningModuleImpl.newQTable(actionPosition);
+        copyInto(shared, trained);
+        learningModule.setQTable(trained);
+    }
+
+    private static void copyInto(QTable from, final QTable to) {
+        from.forEach(new QTable.EntryVisitor() {
+            public void visit(int key, float value, int visits) {
+                to.set(key, value, visits);
+            }
+        });
+    }
+
+    //Cars stopped, summed over every tick of every replica
+    public long getTotalCarsStopped() {
+        return totalCarsStopped;
+    }
+}
@@ -0,0 +1,454 @@
+
+import interfaces.LearningModule;
+import interfaces.LightController;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import utils.Coords;
+import utils.Rng;
+import utils.Velocity;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+//One running copy of the traffic world - lights, map, cars, the
+//controller that switches the lights and, optionally, the learning module
+//learning from them - advanced one tick at a time.
+//Everything random comes from the simulation's own Rng, so several
+//simulations can run side by side on different threads.
+//A large map can also have its cars moved by several threads, each
+//stepping its own TILE_SIZE x TILE_SIZE tiles of it (see CarTiles).
+public class Simulation {
+    //Big enough that few cars cross into another tile on any one tick
+    static final int TILE_SIZE = 64;
+
+    private final Scenario scenario;
+    private final int rewardFunction;
+    private final LightController controller;
+    //null when the controller does not learn
+    private final LearningModule learningModule;
+    private final Rng rand;
+    private final List<TrafficLight> trafficLights;
+    private final RoadMap map;
+    private final WorldState world;
+    private final CarTiles cars;
+    //threads moving the cars of a large map, or null
+    private final ForkJoinPool stepPool;
+    //when a car next arrives at each road entrance
+    private final ArrivalSchedule arrivals;
+    //where each road entrance is and which way its cars start heading
+    private final int[] entranceX;
+    private final int[] entranceY;
+    private final int[] entranceDx;
+    private final int[] entranceDy;
+    //each light's transition this tick, handed to the learning module
+    private final int[] states;
+    private final boolean[] switches;
+    private final int[] rewards;
+    private final int[] nextStates;
+    //past transitions to learn from again, replayBatches minibatches a tick
+    private ReplayBuffer replay;
+    private int replayBatches;
+
+    private int tick;
+    private long totalCars;
+    private long totalCarsStopped;
+
+    Simulation(int rewardFunction, LearningModule learningModule, Rng rand) {
+        this(Scenario.defaultScenario(), rewardFunction, learningModule, rand);
+    }
+
+    Simulation(Scenario scenario, int rewardFunction,
+            LearningModule learningModule, Rng rand) {
+        this(scenario, rewardFunction, learningModule, rand, 1);
+    }
+
+    //stepThreads above one moves the cars tile by tile on that many
+    //threads; the results are the same as with one thread
+    Simulation(Scenario scenario, int rewardFunction,
+            LearningModule learningModule, Rng rand, int stepThreads) {
+        this(scenario, rewardFunction, learningModule, learningModule, rand,
+                stepThreads);
+    }
+
+    //The lights are switched by controller; learningModule, if not null,
+    //learns from the transitions when the simulation is stepped with
+    //learn on
+    Simulation(Scenario scenario, int rewardFunction,
+            LightController controller, LearningModule learningModule,
+            Rng rand, int stepThreads) {
+        this.scenario = scenario;
+        this.rewardFunction = rewardFunction;
+        this.controller = controller;
+        this.learningModule = learningModule;
+        this.rand = rand;
+        trafficLights = scenario.newTrafficLights();
+        states = new int[trafficLights.size()];
+        switches = new boolean[trafficLights.size()];
+        rewards = new int[trafficLights.size()];
+        nextStates = new int[trafficLights.size()];
+        map = new BitboardRoadMapImpl(scenario, trafficLights);
+        world = new WorldState(map);
+        if (stepThreads > 1) {
+            stepPool = new ForkJoinPool(stepThreads);
+            cars = new CarTiles(scenario.getWidth(), scenario.getHeight(),
+                    TILE_SIZE, stepPool);
+        } else {
+            stepPool = null;
+            cars = new CarTiles(scenario.getWidth(), scenario.getHeight());
+        }
+        List<Coords> roadEntrances = map.getRoadEntrances();
+        int entrances = roadEntrances.size();
+        arrivals = new ArrivalSchedule(entrances, rand);
+        entranceX = new int[entrances];
+        entranceY = new int[entrances];
+        entranceDx = new int[entrances];
+        entranceDy = new int[entrances];
+        for (int i = 0; i < entrances; i++) {
+            Coords roadEntrance = roadEntrances.get(i);
+            Velocity start = map.getStartingVelocity(roadEntrance);
+            entranceX[i] = roadEntrance.getX();
+            entranceY[i] = roadEntrance.getY();
+            entranceDx[i] = start.getXSpeed();
+            entranceDy[i] = start.getYSpeed();
+        }
+    }
+
+    //Where the action goes in a q-table key for the given reward function
+    static int actionPosition(int rewardFunction) {
+        switch (rewardFunction) {
+            case 2:
+            case 3:
+                return 100000;
+            default:
+                return 1000;
+        }
+    }
+
+    //Same arrival chance at every road entrance
+    public void setTrafficIntensity(double intensity) {
+        for (int i = 0; i < arrivals.entrances(); i++) {
+            arrivals.setRate(i, intensity, tick);
+        }
+    }
+
+    //Arrival chance per road entrance, in the order of getRoadEntrances()
+    public void setTrafficIntensities(double[] intensities) {
+        for (int i = 0; i < arrivals.entrances(); i++) {
+            arrivals.setRate(i, intensities[i], tick);
+        }
+    }
+
+    //Keep every transition learnt from in replay, and learn from batches
+    //minibatches of it after each tick; null turns replay off
+    public void setReplay(ReplayBuffer replay, int batches) {
+        this.replay = replay;
+        this.replayBatches = batches;
+    }
+
+    //Lets the step threads go once the simulation is finished with; it
+    //must not be stepped again
+    public void close() {
+        if (stepPool != null) {
+            stepPool.shutdown();
+        }
+    }
+
+    public void clearCars() {
+        cars.clear();
+        world.clear();
+    }
+
+    //Basic logic for each time step
+    // - change traffic lights if required - call a function from
+    //   'learning' class to do this
+    // - move cars in their current direction by velocity (modify
+    //   velocity if necessary - using CarAI)
+    // - spawn cars at extremities
+    // - Now that we have the new state, update the qvalue for the
+    //  previous s,a pair (only if learn is set and there is a learning
+    //  module)
+    //Returns the number of cars stopped at the end of the tick
+    public int step(boolean learn) {
+        //Params required to learn
+        RoadMap currentState = world.current();
+        int lights = trafficLights.size();
+
+        //Save the states of each traffic light before updating
+        for (int i = 0; i < lights; i++) {
+            states[i] = stateCode(currentState, trafficLights.get(i));
+        }
+
+        //Use the learned values to update the traffic lights, noting
+        //which of them switch
+        controller.updateTrafficLights(
+                currentState, trafficLights, tick, switches
+        );
+
+        //Move cars currently on map, dropping those that leave it
+        //and counting those that are stopped
+        int carsStopped = cars.step(currentState, trafficLights);
+
+        //Spawn cars onto map extremities, where one arrives this tick
+        //and the entrance is clear
+        for (int i = arrivals.next(tick); i >= 0; i = arrivals.next(tick)) {
+            if (!currentState.carAt(entranceX[i], entranceY[i])) {
+                cars.add(entranceX[i], entranceY[i],
+                        entranceDx[i], entranceDy[i], tick);
+                totalCars++;
+            }
+        }
+        world.place(cars);
+        RoadMap nextState = world.next();
+        totalCarsStopped += carsStopped;
+
+        if (learn && learningModule != null) {
+            // Updates q-values
+            //calculate reward and state code for each traffic light
+            for (int i = 0; i < lights; i++) {
+                int code = stateCode(nextState, trafficLights.get(i));
+                rewards[i] = Rewards.of(rewardFunction, code);
+                nextStates[i] = code;
+            }
+
+            learningModule.learn(
+                states, switches, rewards, nextStates, lights
+            );
+            if (replay != null) {
+                replay.add(states, switches, rewards, nextStates, lights);
+                replay.replay(learningModule, replayBatches);
+            }
+        }
+        world.swap();
+        tick++;
+        return carsStopped;
+    }
+
+    //Skips up to maxTicks ticks over which nothing can happen: there are
+    //no cars on the map, no light is part way through switching and no
+    //car is due to arrive. The lights keep their phase and nothing is
+    //learnt, as if the controller left its lights alone on the empty
+    //map; no car is stopped on any skipped tick. Returns how many ticks
+    //were skipped, 0 unless the simulation is quiet.
+    public int fastForward(int maxTicks) {
+        if (maxTicks <= 0 || cars.size() != 0) {
+            return 0;
+        }
+        for (int i = 0; i < trafficLights.size(); i++) {
+            if (trafficLights.get(i).getDelay() != 0) {
+                return 0;
+            }
+        }
+        long until = Math.min(arrivals.nextDue(), (long) tick + maxTicks);
+        int skipped = (int) (until - tick);
+        if (skipped <= 0) {
+            return 0;
+        }
+        tick += skipped;
+        return skipped;
+    }
+
+    private int stateCode(RoadMap state, TrafficLight light) {
+        switch (rewardFunction) {
+            case 2:
+                return state.stateCode2(light);
+            case 3:
+                return state.stateCode3(light, cars);
+            default:
+                return state.stateCode(light);
+        }
+    }
+
+    //Everything that changes while the simulation runs, copied so it can
+    //be written out on another thread while this one carries on
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.tick = tick;
+        snapshot.totalCars = totalCars;
+        snapshot.totalCarsStopped = totalCarsStopped;
+        snapshot.rngState = rand.getState();
+        int entrances = arrivals.entrances();
+        snapshot.intensities = new double[entrances];
+        snapshot.arrivals = new long[entrances];
+        for (int i = 0; i < entrances; i++) {
+            snapshot.intensities[i] = arrivals.getRate(i);
+            snapshot.arrivals[i] = arrivals.getDue(i);
+        }
+        int lights = trafficLights.size();
+        snapshot.horizontalGreen = new boolean[lights];
+        snapshot.delay = new int[lights];
+        for (int i = 0; i < lights; i++) {
+            snapshot.horizontalGreen[i] = trafficLights.get(i).horizontalGreen();
+            snapshot.delay[i] = trafficLights.get(i).getDelay();
+        }
+        int n = cars.size();
+        snapshot.x = new int[n];
+        snapshot.y = new int[n];
+        snapshot.dx = new int[n];
+        snapshot.dy = new int[n];
+        snapshot.stopped = new boolean[n];
+        snapshot.spawnTick = new int[n];
+        int i = 0;
+        for (int t = 0; t < cars.tiles(); t++) {
+            CarStore tile = cars.tile(t);
+            for (int slot = 0; slot < tile.size(); slot++, i++) {
+                snapshot.x[i] = tile.getX(slot);
+                snapshot.y[i] = tile.getY(slot);
+                snapshot.dx[i] = tile.getDirectionX(slot);
+                snapshot.dy[i] = tile.getDirectionY(slot);
+                snapshot.stopped[i] = tile.isStopped(slot);
+                snapshot.spawnTick[i] = tile.getSpawnTick(slot);
+            }
+        }
+        return snapshot;
+    }
+
+    //Carry on from where snapshot() was taken
+    public void restore(Snapshot snapshot) {
+        if (snapshot.delay.length != trafficLights.size() ||
+                snapshot.intensities.length != arrivals.entrances()) {
+            throw new IllegalArgumentException(
+                    "Snapshot is of a different scenario");
+        }
+        tick = snapshot.tick;
+        totalCars = snapshot.totalCars;
+        totalCarsStopped = snapshot.totalCarsStopped;
+        rand.setState(snapshot.rngState);
+        for (int i = 0; i < arrivals.entrances(); i++) {
+            arrivals.restore(i, snapshot.intensities[i], snapshot.arrivals[i]);
+        }
+        for (int i = 0; i < trafficLights.size(); i++) {
+            ((TrafficLightImpl) trafficLights.get(i)).restore(
+                    snapshot.horizontalGreen[i], snapshot.delay[i]);
+        }
+        clearCars();
+        for (int i = 0; i < snapshot.x.length; i++) {
+            cars.add(snapshot.x[i], snapshot.y[i], snapshot.dx[i],
+                    snapshot.dy[i], snapshot.stopped[i], snapshot.spawnTick[i]);
+        }
+        //the cars become the current map, as after a normal step
+        world.place(cars);
+        world.swap();
+    }
+
+    public static class Snapshot {
+        private int tick;
+        private long totalCars;
+        private long totalCarsStopped;
+        private long rngState;
+        private double[] intensities;
+        private long[] arrivals;
+        private boolean[] horizontalGreen;
+        private int[] delay;
+        private int[] x;
+        private int[] y;
+        private int[] dx;
+        private int[] dy;
+        private boolean[] stopped;
+        private int[] spawnTick;
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(tick);
+            out.writeLong(totalCars);
+            out.writeLong(totalCarsStopped);
+            out.writeLong(rngState);
+            out.writeInt(intensities.length);
+            for (int i = 0; i < intensities.length; i++) {
+                out.writeDouble(intensities[i]);
+                out.writeLong(arrivals[i]);
+            }
+            out.writeInt(delay.length);
+            for (int i = 0; i < delay.length; i++) {
+                out.writeBoolean(horizontalGreen[i]);
+                out.writeInt(delay[i]);
+            }
+            out.writeInt(x.length);
+            for (int i = 0; i < x.length; i++) {
+                out.writeInt(x[i]);
+                out.writeInt(y[i]);
+                out.writeInt(dx[i]);
+                out.writeInt(dy[i]);
+                out.writeBoolean(stopped[i]);
+                out.writeInt(spawnTick[i]);
+            }
+        }
+
+        static Snapshot read(ByteBuffer in) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.tick = in.getInt();
+            snapshot.totalCars = in.getLong();
+            snapshot.totalCarsStopped = in.getLong();
+            snapshot.rngState = in.getLong();
+            int entrances = in.getInt();
+            snapshot.intensities = new double[entrances];
+            snapshot.arrivals = new long[entrances];
+            for (int i = 0; i < entrances; i++) {
+                snapshot.intensities[i] = in.getDouble();
+                snapshot.arrivals[i] = in.getLong();
+            }
+            int lights = in.getInt();
+            snapshot.horizontalGreen = new boolean[lights];
+            snapshot.delay = new int[lights];
+            for (int i = 0; i < lights; i++) {
+                snapshot.horizontalGreen[i] = in.get() != 0;
+                snapshot.delay[i] = in.getInt();
+            }
+            int n = in.getInt();
+            snapshot.x = new int[n];
+            snapshot.y = new int[n];
+            snapshot.dx = new int[n];
+            snapshot.dy = new int[n];
+            snapshot.stopped = new boolean[n];
+            snapshot.spawnTick = new int[n];
+            for (int i = 0; i < n; i++) {
+                snapshot.x[i] = in.getInt();
+                snapshot.y[i] = in.getInt();
+                snapshot.dx[i] = in.getInt();
+                snapshot.dy[i] = in.getInt();
+                snapshot.stopped[i] = in.get() != 0;
+                snapshot.spawnTick[i] = in.getInt();
+            }
+            return snapshot;
+        }
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    //The map without cars
+    public RoadMap getMap() {
+        return map;
+    }
+
+    public CarTiles getCars() {
+        return cars;
+    }
+
+    public List<TrafficLight> getTrafficLights() {
+        return trafficLights;
+    }
+
+    public LightController getController() {
+        return controller;
+    }
+
+    //null if nothing learns from this simulation
+    public LearningModule getLearningModule() {
+        return learningModule;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public long getTotalCars() {
+        return totalCars;
+    }
+
+    public long getTotalCarsStopped() {
+        return totalCarsStopped;
+    }
+}
@@ -49,4 +49,11 @@ public class TrafficLightImpl implements TrafficLight {
     public boolean horizontalGreen() {
         return horizontalGreen;
     }
+
+    //Put the light back into a state saved from getDelay() and
+    //horizontalGreen()
+    void restore(boolean horizontalGreen, int delay) {
+        this.horizontalGreen = horizontalGreen;
+        this.delay = delay;
+    }
 }
@@ -0,0 +1,157 @@
+
+import interfaces.QTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+//Training part way through: where Main's training loop was in its
+//intensity schedule and its statistics, the simulation (tick, cars,
+//lights, random stream), the learning module's random stream and a copy
+//of its q-table. The file is a short header and the loop and simulation
+//state, followed by a QTableCheckpoint.
+public class TrainingCheckpoint {
+    static final int MAGIC = 0x51544350;
+    static final int VERSION = 2;
+
+    private int timeRan;
+    private double trafficIntensity;
+    private long iterations;
+    private long totalCarsStopped;
+    private int maxCarsStopped;
+    private Simulation.Snapshot simulation;
+    private long moduleRngState;
+    private int stateEncoder;
+    private LearningModuleImpl learningModule;
+    private QTable table;
+
+    private TrainingCheckpoint() {
+    }
+
+    //Snapshot taken on the training thread; timeRan is the first tick
+    //still to run. Only copies are kept, so training can carry on while
+    //the checkpoint is written.
+    static TrainingCheckpoint take(int timeRan, double trafficIntensity,
+            long iterations, long totalCarsStopped, int maxCarsStopped,
+            Simulation simulation, int stateEncoder,
+            LearningModuleImpl learningModule) {
+        TrainingCheckpoint checkpoint = new TrainingCheckpoint();
+        checkpoint.timeRan = timeRan;
+        checkpoint.trafficIntensity = trafficIntensity;
+        checkpoint.iterations = iterations;
+        checkpoint.totalCarsStopped = totalCarsStopped;
+        checkpoint.maxCarsStopped = maxCarsStopped;
+        checkpoint.simulation = simulation.snapshot();
+        checkpoint.moduleRngState = learningModule.getRng().getState();
+        checkpoint.stateEncoder = stateEncoder;
+        checkpoint.learningModule = learningModule;
+        checkpoint.table = learningModule.getQTable().copy();
+        return checkpoint;
+    }
+
+    //Writes to a temporary file first and renames it over file, so a
+    //crash while writing leaves the previous checkpoint intact
+    void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(timeRan);
+            out.writeDouble(trafficIntensity);
+            out.writeLong(iterations);
+            out.writeLong(totalCarsStopped);
+            out.writeInt(maxCarsStopped);
+            out.writeLong(moduleRngState);
+            simulation.write(out);
+            QTableCheckpoint.write(out, stateEncoder, learningModule, table);
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static TrainingCheckpoint load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a training checkpoint");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has checkpoint version "
+                        + version + ", expected " + VERSION);
+            }
+            TrainingCheckpoint checkpoint = new TrainingCheckpoint();
+            try {
+                checkpoint.timeRan = buffer.getInt();
+                checkpoint.trafficIntensity = buffer.getDouble();
+                checkpoint.iterations = buffer.getLong();
+                checkpoint.totalCarsStopped = buffer.getLong();
+                checkpoint.maxCarsStopped = buffer.getInt();
+                checkpoint.moduleRngState = buffer.getLong();
+                checkpoint.simulation = Simulation.Snapshot.read(buffer);
+            } catch (RuntimeException e) {
+                throw new IOException(file + " is truncated", e);
+            }
+            QTableCheckpoint qTable =
+                    QTableCheckpoint.read(buffer, file.toString());
+            checkpoint.stateEncoder = qTable.getStateEncoder();
+            checkpoint.learningModule = qTable.getLearningModule();
+            checkpoint.learningModule.getRng().setState(
+                    checkpoint.moduleRngState);
+            checkpoint.table = checkpoint.learningModule.getQTable();
+            return checkpoint;
+        } finally {
+            raf.close();
+        }
+    }
+
+    //Puts simulation back where it was when the checkpoint was taken
+    public void restore(Simulation simulation) {
+        simulation.restore(this.simulation);
+    }
+
+    //First tick of the training loop still to run
+    public int getTimeRan() {
+        return timeRan;
+    }
+
+    public double getTrafficIntensity() {
+        return trafficIntensity;
+    }
+
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getTotalCarsStopped() {
+        return totalCarsStopped;
+    }
+
+    public int getMaxCarsStopped() {
+        return maxCarsStopped;
+    }
+
+    public int getStateEncoder() {
+        return stateEncoder;
+    }
+
+    //The module as loaded, its random stream where it was
+    public LearningModuleImpl getLearningModule() {
+        return learningModule;
+    }
+}
@@ -0,0 +1,73 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Bounded queue of q-learning transitions from one producer thread to one
+//consumer thread, without locks. Each transition is four ints in a flat
+//array. The producer only writes tail and the consumer only writes head,
+//so each side publishes its progress with an ordered store and re-reads
+//the other's counter only when its cached copy says the ring is full or
+//empty.
+public class TransitionRing {
+    private static final int FIELDS = 4;
+
+    private final int[] slots;
+    private final int mask;
+    //next transition to read; written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    //next transition to write; written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    //producer's last look at head, consumer's last look at tail
+    private long headSeen;
+    private long tailSeen;
+
+    public interface Visitor {
+        void transition(int state, int action, int reward, int nextState);
+    }
+
+    //capacity is rounded up to a power of two
+    TransitionRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new int[size * FIELDS];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    //Producer side: queue a transition, or return false straight away if
+    //the ring is full
+    public boolean offer(int state, int action, int reward, int nextState) {
+        long t = tail.get();
+        if (t - headSeen > mask) {
+            headSeen = head.get();
+            if (t - headSeen > mask) {
+                return false;
+            }
+        }
+        int i = (int) (t & mask) * FIELDS;
+        slots[i] = state;
+        slots[i + 1] = action;
+        slots[i + 2] = reward;
+        slots[i + 3] = nextState;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    //Consumer side: hand up to max queued transitions to visitor, oldest
+    //first; returns how many there were
+    public int drain(Visitor visitor, int max) {
+        long h = head.get();
+        if (h == tailSeen) {
+            tailSeen = tail.get();
+        }
+        int n = (int) Math.min(tailSeen - h, max);
+        for (int k = 0; k < n; k++) {
+            int i = (int) ((h + k) & mask) * FIELDS;
+            visitor.transition(slots[i], slots[i + 1], slots[i + 2],
+                    slots[i + 3]);
+        }
+        head.lazySet(h + n);
+        return n;
+    }
+}
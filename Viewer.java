@@ -14,9 +14,13 @@ public class Viewer extends JFrame {
 
     private String[] intensity;
     
-    private static final int u = 10;
-    private static final int w = 3; // we require 2*w < u
-    private static final int n = 60;
+    //square size in pixels, shrunk to fit large maps
+    private final int u;
+    private final int w; // we require 2*w < u
+    private final int width;
+    private final int height;
+    //street names are drawn for the default map only
+    private final boolean streetNames;
     
 
     private static final Color backgroundColor = new Color(0x7e7e7e);
@@ -25,9 +29,15 @@ public class Viewer extends JFrame {
     private static final Color error = Color.magenta;
     private static final int darkish = 0x3f;
     
-    public Viewer() {
+    public Viewer(Scenario scenario) {
         super();
-        this.setSize(u*n, u*n);
+        width = scenario.getWidth();
+        height = scenario.getHeight();
+        u = Math.max(3, Math.min(10, 900 / Math.max(width, height)));
+        w = (u - 1) / 3;
+        streetNames = width == 60 && height == 60 &&
+                scenario.getRoadEntrances().size() == 8;
+        this.setSize(u*width, u*height);
         this.setVisible(true);
     }
 
@@ -43,37 +53,39 @@ public class Viewer extends JFrame {
     }
     
     private void stillLearning(Graphics g) {
-        g.drawString("Still learning...", u*n/3, u*n/3);
+        g.drawString("Still learning...", u*width/3, u*height/3);
     }
     
     private void firstPicture(Graphics g) {
-        g.drawString("Learned! Enjoy the show!", u*n/3, u*n/3);
+        g.drawString("Learned! Enjoy the show!", u*width/3, u*height/3);
         g.setColor(backgroundColor);
-        g.fillRect(0, 0, u*n, u*n);
+        g.fillRect(0, 0, u*width, u*height);
     }
 
     private void displayMap(Graphics g) {
         g.setColor(roadColor);
    
-        g.drawString("Queens Road/Minsk Sq Circle ", 0, 50); 
-        g.drawString("("+intensity[0]+")", 0, 65);   
-        g.drawString("Cubbon Road - Central St ", 230, 50); 
-        g.drawString("("+intensity[1]+")", 230, 65);   
-        g.drawString("Cubbon Road ", 480, 165);   
-        g.drawString("("+intensity[2]+")", 480, 180);   
-        g.drawString("MG Road ", 490, 365);
-        g.drawString("("+intensity[3]+")", 490, 380);   
-        g.drawString("St Marks Road ", 220, 575); 
-        g.drawString("("+intensity[4]+")", 220, 590);   
-        g.drawString("Kasturba Road-Queens Road ", 420, 575);  
-        g.drawString("("+intensity[5]+")", 420, 590);   
-        g.drawString("Kasturba Road - MG Road ", 0, 430);  
-        g.drawString("("+intensity[6]+")", 0, 445);   
-        g.drawString("Cubbon Road/Minsk Sq Circle ", 0, 235);        
-        g.drawString("("+intensity[7]+")", 0, 250);   
+        if (streetNames && intensity.length >= 8) {
+            g.drawString("Queens Road/Minsk Sq Circle ", 0, 50); 
+            g.drawString("("+intensity[0]+")", 0, 65);   
+            g.drawString("Cubbon Road - Central St ", 230, 50); 
+            g.drawString("("+intensity[1]+")", 230, 65);   
+            g.drawString("Cubbon Road ", 480, 165);   
+            g.drawString("("+intensity[2]+")", 480, 180);   
+            g.drawString("MG Road ", 490, 365);
+            g.drawString("("+intensity[3]+")", 490, 380);   
+            g.drawString("St Marks Road ", 220, 575); 
+            g.drawString("("+intensity[4]+")", 220, 590);   
+            g.drawString("Kasturba Road-Queens Road ", 420, 575);  
+            g.drawString("("+intensity[5]+")", 420, 590);   
+            g.drawString("Kasturba Road - MG Road ", 0, 430);  
+            g.drawString("("+intensity[6]+")", 0, 445);   
+            g.drawString("Cubbon Road/Minsk Sq Circle ", 0, 235);        
+            g.drawString("("+intensity[7]+")", 0, 250);   
+        }
 
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; ++j) {
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; ++j) {
                 Coords k = new Coords(i, j);
                 if (m.roadAt(k)) {
                     g.fillRect(u*i, u*j, u, u);
@@ -129,7 +141,7 @@ public class Viewer extends JFrame {
             displayMap(g);
         } else {
             g.setColor(error);
-            g.fillRect(0, 0, u*n, u*n);
+            g.fillRect(0, 0, u*width, u*height);
         }
     }
 }
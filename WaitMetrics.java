@@ -0,0 +1,126 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Test results: the average number of cars stopped per tick, summed per
+//bucket (one traffic intensity, or one time of day from a trace) and per
+//slot within the bucket's interval. Sums live in one preallocated float
+//array indexed by bucket and slot, so recording a value is an array
+//update; labels are only looked at when a bucket is first seen and when
+//the results are written, in the order the buckets were first seen.
+//
+//Each thread keeps its own; copy() and merge() combine them.
+public class WaitMetrics {
+    private final int slots;
+    private final Map<String, Integer> buckets = new HashMap<String, Integer>();
+    private String[] labels = new String[16];
+    private float[] sums;
+    private int size;
+
+    WaitMetrics(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("Need at least one slot");
+        }
+        this.slots = slots;
+        sums = new float[labels.length * slots];
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    public int buckets() {
+        return size;
+    }
+
+    //The bucket with the given label, added if it is new
+    public int bucket(String label) {
+        Integer bucket = buckets.get(label);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (size == labels.length) {
+            labels = Arrays.copyOf(labels, 2 * size);
+            sums = Arrays.copyOf(sums, 2 * size * slots);
+        }
+        labels[size] = label;
+        buckets.put(label, size);
+        return size++;
+    }
+
+    public String label(int bucket) {
+        return labels[bucket];
+    }
+
+    public void add(int bucket, int slot, float value) {
+        sums[bucket * slots + slot] += value;
+    }
+
+    public float get(int bucket, int slot) {
+        return sums[bucket * slots + slot];
+    }
+
+    //A copy that this one can go on changing without affecting
+    public WaitMetrics copy() {
+        WaitMetrics copy = new WaitMetrics(slots);
+        copy.merge(this);
+        return copy;
+    }
+
+    //Adds other's sums in, matching buckets by label
+    public void merge(WaitMetrics other) {
+        if (other.slots != slots) {
+            throw new IllegalArgumentException(
+                    "Cannot merge " + other.slots + " slots into " + slots);
+        }
+        for (int b = 0; b < other.size; b++) {
+            int bucket = bucket(other.labels[b]);
+            for (int s = 0; s < slots; s++) {
+                add(bucket, s, other.get(b, s));
+            }
+        }
+    }
+
+    public void clear() {
+        buckets.clear();
+        Arrays.fill(labels, 0, size, null);
+        Arrays.fill(sums, 0, size * slots, 0);
+        size = 0;
+    }
+
+    //Writes one line per bucket and slot: the label, the sum divided by
+    //runs and, with slotTicks above zero, the slot's first tick
+    public void write(File file, int runs, int slotTicks) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+        try {
+            write(out, runs, slotTicks);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void write(Writer out, int runs, int slotTicks)
+            throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int b = 0; b < size; b++) {
+            for (int s = 0; s < slots; s++) {
+                line.setLength(0);
+                line.append(labels[b]).append(',').append(get(b, s) / runs);
+                if (slotTicks > 0) {
+                    line.append(',').append(s * slotTicks);
+                }
+                line.append('\n');
+                out.write(line.toString());
+            }
+        }
+        out.flush();
+    }
+}
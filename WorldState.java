@@ -0,0 +1,108 @@
+
+import interfaces.RoadMap;
+import utils.Cell;
+
+import java.util.Arrays;
+
+//Double-buffered view of the cars on the map.
+//During a tick the current map is only read (state codes, car moves,
+//spawn checks) while the next map is rewritten with where the cars ended
+//up. swap() then makes the next map current instead of copying it.
+//Each buffer remembers the squares it stamped, so rewriting it clears
+//and sets one square per car - the cost follows the number of cars,
+//not the size of the grid.
+//Like the copyMap()/addCars() sequence it replaces, the next map also
+//still shows the squares cars were on at the start of the tick until
+//swap() is called; the rewards are learnt from that view.
+public class WorldState {
+    private RoadMap current;
+    private RoadMap next;
+    private int[] currentStamped = new int[64];
+    private int[] nextStamped = new int[64];
+    private int currentCount;
+    private int nextCount;
+
+    //emptyMap is copied, never modified
+    WorldState(RoadMap emptyMap) {
+        current = emptyMap.copyMap();
+        next = emptyMap.copyMap();
+    }
+
+    //The map as it is at the start of this tick
+    public RoadMap current() {
+        return current;
+    }
+
+    //The map after place() - where cars were at the start of this tick
+    //and where they are at the end of it
+    public RoadMap next() {
+        return next;
+    }
+
+    //Rewrite the next map with the current cars plus the given ones
+    public void place(CarTiles cars) {
+        for (int i = 0; i < nextCount; i++) {
+            removeCar(next, nextStamped[i]);
+        }
+        for (int i = 0; i < currentCount; i++) {
+            addCar(next, currentStamped[i]);
+        }
+        nextCount = 0;
+        int size = cars.size();
+        if (nextStamped.length < size) {
+            nextStamped = Arrays.copyOf(
+                    nextStamped, Math.max(size, 2*nextStamped.length));
+        }
+        for (int t = 0; t < cars.tiles(); t++) {
+            CarStore tile = cars.tile(t);
+            for (int i = 0; i < tile.size(); i++) {
+                int cell = Cell.of(tile.getX(i), tile.getY(i));
+                addCar(next, cell);
+                nextStamped[nextCount++] = cell;
+            }
+        }
+    }
+
+    //Make the next map current, holding only the cars given to place();
+    //the old current map becomes the buffer the following place() rewrites
+    public void swap() {
+        for (int i = 0; i < currentCount; i++) {
+            removeCar(next, currentStamped[i]);
+        }
+        for (int i = 0; i < nextCount; i++) {
+            addCar(next, nextStamped[i]);
+        }
+        RoadMap map = current;
+        current = next;
+        next = map;
+        int[] stamped = currentStamped;
+        currentStamped = nextStamped;
+        nextStamped = stamped;
+        int count = currentCount;
+        currentCount = nextCount;
+        nextCount = count;
+    }
+
+    //Remove every car from both maps
+    public void clear() {
+        for (int i = 0; i < currentCount; i++) {
+            removeCar(current, currentStamped[i]);
+        }
+        for (int i = 0; i < currentCount; i++) {
+            removeCar(next, currentStamped[i]);
+        }
+        for (int i = 0; i < nextCount; i++) {
+            removeCar(next, nextStamped[i]);
+        }
+        currentCount = 0;
+        nextCount = 0;
+    }
+
+    private static void addCar(RoadMap map, int cell) {
+        map.addCar(Cell.x(cell), Cell.y(cell));
+    }
+
+    private static void removeCar(RoadMap map, int cell) {
+        map.removeCar(Cell.x(cell), Cell.y(cell));
+    }
+}
@@ -0,0 +1,39 @@
+package benchmarks;
+
+import interfaces.Car;
+import interfaces.TrafficLight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.Coords;
+
+import java.util.concurrent.TimeUnit;
+
+//CarImpl.move for every car on a warmed up map. Each car is put back on
+//its starting square first, so every call measures the same moves.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CarBench {
+
+    @Benchmark
+    public void move(Cars c) {
+        for (int i = 0; i < c.cars.size(); i++) {
+            TrafficLight light = c.carLights[i];
+            if (light == null) {
+                continue;
+            }
+            Car car = c.cars.get(i);
+            Coords position = car.getCoords();
+            position.setX(c.startX[i]);
+            position.setY(c.startY[i]);
+            car.move(light, c.map);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import interfaces.Car;
+import interfaces.CarIndex;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import utils.Coords;
+import utils.Velocity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//The cars of a warmed up Traffic copied into CarImpl objects, on a
+//fresh map of the chosen RoadMap implementation
+@State(Scope.Benchmark)
+public class Cars {
+    @Param({"BitboardRoadMapImpl", "RoadMapImpl"})
+    public String mapImpl;
+
+    RoadMap map;
+    List<TrafficLight> lights;
+    final List<Car> cars = new ArrayList<Car>();
+    //the simulation's own index of the same cars
+    CarIndex index;
+    //closest light ahead of each car, or the first light for a car that
+    //has passed them all
+    TrafficLight[] carLights;
+    //where each car started, so move() can be measured from the same
+    //position every time
+    int[] startX;
+    int[] startY;
+
+    @Setup(Level.Trial)
+    public void setUp(Traffic traffic) {
+        lights = traffic.lights;
+        Object scenario = Root.call(traffic.simulation, "getScenario");
+        if (mapImpl.equals("RoadMapImpl")) {
+            map = (RoadMap) Root.create(mapImpl,
+                    new Class<?>[] {scenario.getClass()}, scenario);
+        } else {
+            map = (RoadMap) Root.create(mapImpl,
+                    new Class<?>[] {scenario.getClass(), List.class},
+                    scenario, lights);
+        }
+        for (Car car : traffic.cars()) {
+            Coords position = new Coords(car.getCoords());
+            Velocity direction = car.getDirection();
+            map.addCar(position);
+            cars.add((Car) Root.create("CarImpl",
+                    new Class<?>[] {Coords.class, Velocity.class},
+                    position, new Velocity(
+                            direction.getXSpeed(), direction.getYSpeed())));
+        }
+
+        index = (CarIndex) Root.call(traffic.simulation, "getCars");
+
+        int n = cars.size();
+        carLights = new TrafficLight[n];
+        startX = new int[n];
+        startY = new int[n];
+        for (int i = 0; i < n; i++) {
+            Car car = cars.get(i);
+            carLights[i] = map.getClosestTrafficLight(car, lights);
+            startX[i] = car.getCoords().getX();
+            startY[i] = car.getCoords().getY();
+        }
+    }
+
+    //Takes the first car off the map and puts it back, which leaves the
+    //map as it was but with a new version, so nothing the map cached on
+    //the last call is used on the next
+    void changeMap() {
+        if (startX.length > 0) {
+            map.removeCar(startX[0], startY[0]);
+            map.addCar(startX[0], startY[0]);
+        }
+    }
+}
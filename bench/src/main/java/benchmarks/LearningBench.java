@@ -0,0 +1,69 @@
+package benchmarks;
+
+import interfaces.Action;
+import interfaces.TrafficLight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+//LearningModuleImpl calls for every light, with the q-table as it is
+//after the warm-up training, and the greedy controller compiled from it
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LearningBench {
+
+    @Benchmark
+    public void learn(Traffic t) {
+        t.learningModule.learn(
+                t.states, t.switches, t.rewards, t.states, t.lights);
+    }
+
+    //The same transitions through the array overload
+    @Benchmark
+    public void learnBatch(Traffic t) {
+        t.learningModule.learn(t.stateArray, t.switchArray, t.rewardArray,
+                t.stateArray, t.stateArray.length);
+    }
+
+    @Benchmark
+    public void getAction(Traffic t, Blackhole blackhole) throws Throwable {
+        for (TrafficLight light : t.lights) {
+            blackhole.consume(
+                    (Action) t.getAction.invokeExact(
+                            (Object) t.learningModule, t.map, light));
+        }
+    }
+
+    //The same decisions from the compiled greedy policy
+    @Benchmark
+    public int greedyDecide(Traffic t) throws Throwable {
+        int switches = 0;
+        for (TrafficLight light : t.lights) {
+            if ((boolean) t.decide.invokeExact(
+                    t.controller, t.map, light)) {
+                switches++;
+            }
+        }
+        return switches;
+    }
+
+    @Benchmark
+    public float getMaxQValue(Traffic t) throws Throwable {
+        float sum = 0;
+        for (int i = 0; i < t.states.size(); i++) {
+            sum += (float) t.getMaxQValue.invokeExact(
+                    (Object) t.learningModule, (int) t.states.get(i));
+        }
+        return sum;
+    }
+}
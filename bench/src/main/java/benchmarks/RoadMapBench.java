@@ -0,0 +1,108 @@
+package benchmarks;
+
+import interfaces.Car;
+import interfaces.TrafficLight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+//RoadMap queries over every light, or every car, of a warmed up map.
+//The state code and crossing benchmarks first change the map's version
+//(see Cars.changeMap), as a tick of the simulation does, so the maps
+//work their answers out rather than repeat ones cached from the call
+//before; the *Cached benchmarks measure asking again of an unchanged map.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoadMapBench {
+
+    @Benchmark
+    public int stateCode(Cars c) {
+        c.changeMap();
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode(light);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int stateCode2(Cars c) {
+        c.changeMap();
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode2(light);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int stateCode3(Cars c) {
+        c.changeMap();
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode3(light, c.cars);
+        }
+        return sum;
+    }
+
+    //The same, finding the front cars through the car index
+    @Benchmark
+    public int stateCode3Indexed(Cars c) {
+        c.changeMap();
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode3(light, c.index);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int stateCodeCached(Cars c) {
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode(light);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int stateCode2Cached(Cars c) {
+        int sum = 0;
+        for (TrafficLight light : c.lights) {
+            sum += c.map.stateCode2(light);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int roomToCrossIntersection(Cars c) {
+        c.changeMap();
+        int room = 0;
+        for (int i = 0; i < c.cars.size(); i++) {
+            TrafficLight light = c.carLights[i];
+            Car car = c.cars.get(i);
+            if (c.map.roomToCrossIntersection(
+                    car.getCoords(), car.getDirection(), light)) {
+                room++;
+            }
+        }
+        return room;
+    }
+
+    @Benchmark
+    public void getClosestTrafficLight(Cars c, Blackhole blackhole) {
+        for (Car car : c.cars) {
+            blackhole.consume(c.map.getClosestTrafficLight(car, c.lights));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+//The simulation classes live in the default package, which code in a
+//named package (as JMH requires) cannot refer to, so the benchmarks
+//reach them by name. Only set-up goes through reflection; measured
+//calls use interfaces or method handles.
+final class Root {
+
+    private Root() {
+    }
+
+    static Object create(String className, Class<?>[] types, Object... args) {
+        try {
+            Constructor<?> constructor =
+                    Class.forName(className).getDeclaredConstructor(types);
+            constructor.setAccessible(true);
+            return constructor.newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + className, e);
+        }
+    }
+
+    static Object call(Object target, String name, Class<?>[] types,
+            Object... args) {
+        try {
+            return method(target.getClass(), name, types).invoke(target, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot call " + name, e);
+        }
+    }
+
+    static Object call(Object target, String name) {
+        return call(target, name, new Class<?>[0]);
+    }
+
+    static Object callStatic(String className, String name, Class<?>[] types,
+            Object... args) {
+        try {
+            return method(Class.forName(className), name, types)
+                    .invoke(null, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot call " + name, e);
+        }
+    }
+
+    //Handle for target's method, taking the receiver as an Object so it
+    //can be called with invokeExact from here
+    static MethodHandle handle(Object target, String name, Class<?> returns,
+            Class<?>... types) {
+        try {
+            MethodHandle handle = MethodHandles.lookup().unreflect(
+                    method(target.getClass(), name, types));
+            return handle.asType(
+                    MethodType.methodType(returns, Object.class, types));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot find " + name, e);
+        }
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>[] types)
+            throws NoSuchMethodException {
+        Method method = type.getDeclaredMethod(name, types);
+        method.setAccessible(true);
+        return method;
+    }
+}
@@ -0,0 +1,112 @@
+package benchmarks;
+
+import interfaces.Action;
+import interfaces.Car;
+import interfaces.LearningModule;
+import interfaces.RoadMap;
+import interfaces.TrafficLight;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import utils.Coords;
+import utils.Rng;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+//A simulation trained for WARMUP_TICKS ticks at the given car density,
+//so the roads hold a steady amount of traffic and the q-table is filled
+//in the way it is during real training
+@State(Scope.Benchmark)
+public class Traffic {
+    static final long SEED = 42;
+    static final int WARMUP_TICKS = 5000;
+    static final int REWARD_FUNCTION = 1;
+
+    //chance of a car arriving at each road entrance every tick
+    @Param({"0.2", "0.4", "0.6", "0.8", "1.0"})
+    public double density;
+
+    Object simulation;
+    LearningModule learningModule;
+    List<TrafficLight> lights;
+    //the simulation's map with its cars on it, as the learner sees it
+    RoadMap map;
+    MethodHandle step;
+    MethodHandle getAction;
+    MethodHandle getMaxQValue;
+    //a GreedyController compiled from the warmed up q-table
+    Object controller;
+    MethodHandle decide;
+
+    //one learn() call's worth of input, taken from the warmed up map
+    final List<Integer> states = new ArrayList<Integer>();
+    final List<Boolean> switches = new ArrayList<Boolean>();
+    final List<Integer> rewards = new ArrayList<Integer>();
+    //and the same as arrays, for the batch learn()
+    int[] stateArray;
+    boolean[] switchArray;
+    int[] rewardArray;
+
+    @SuppressWarnings("unchecked")
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        int actionPosition = (Integer) Root.callStatic("Simulation",
+                "actionPosition", new Class<?>[] {int.class}, REWARD_FUNCTION);
+        learningModule = (LearningModule) Root.create("LearningModuleImpl",
+                new Class<?>[] {int.class, Rng.class},
+                actionPosition, new Rng(SEED));
+        simulation = Root.create("Simulation",
+                new Class<?>[] {int.class, LearningModule.class, Rng.class},
+                REWARD_FUNCTION, learningModule, new Rng(SEED + 1));
+        Root.call(simulation, "setTrafficIntensity",
+                new Class<?>[] {double.class}, density);
+
+        step = Root.handle(simulation, "step", int.class, boolean.class);
+        getAction = Root.handle(learningModule, "getAction", Action.class,
+                RoadMap.class, TrafficLight.class);
+        getMaxQValue = Root.handle(learningModule, "getMaxQValue",
+                float.class, int.class);
+
+        for (int t = 0; t < WARMUP_TICKS; t++) {
+            int carsStopped = (int) step.invokeExact(simulation, true);
+        }
+
+        lights = (List<TrafficLight>) Root.call(simulation, "getTrafficLights");
+        map = ((RoadMap) Root.call(simulation, "getMap")).copyMap();
+        for (Car car : cars()) {
+            map.addCar(new Coords(car.getCoords()));
+        }
+        Object policy = Root.callStatic("GreedyPolicy", "compile",
+                new Class<?>[] {int.class, learningModule.getClass()},
+                REWARD_FUNCTION, learningModule);
+        controller = Root.create("GreedyController",
+                new Class<?>[] {policy.getClass()}, policy);
+        decide = Root.handle(controller, "decide", boolean.class,
+                RoadMap.class, TrafficLight.class);
+
+        for (int i = 0; i < lights.size(); i++) {
+            int code = map.stateCode(lights.get(i));
+            states.add(code);
+            switches.add(i % 2 == 0);
+            rewards.add(learningModule.reward(code));
+        }
+        stateArray = new int[lights.size()];
+        switchArray = new boolean[lights.size()];
+        rewardArray = new int[lights.size()];
+        for (int i = 0; i < lights.size(); i++) {
+            stateArray[i] = states.get(i);
+            switchArray[i] = switches.get(i);
+            rewardArray[i] = rewards.get(i);
+        }
+    }
+
+    //Views of the simulation's cars, valid until it steps again
+    @SuppressWarnings("unchecked")
+    List<Car> cars() {
+        return (List<Car>) Root.call(Root.call(simulation, "getCars"), "asList");
+    }
+}
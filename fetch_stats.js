@@ -7,8 +7,18 @@ var mapping = []	// [{'road_name': <road_name>, 'jam_factor': <jam_factor>}]
 
 var url = 'https://traffic.cit.api.here.com/traffic/6.2/flow.json?bbox=12.9347893,77.1101299;13.9342674,78.6105505&app_id=ugPaFndPmgFxofY9ZnWL&app_code=QOowHetHZAyiD3lVbFkEVw'
 
+// With a directory argument the snapshot is also saved there, for a
+// running simulation watching it (java Main <directory>)
+var drop = process.argv[2]
+
 request(url, function (error, response, body) {
 	if (!error && response && response.statusCode == 200) {
+		if (drop) {
+			var stamp = Math.floor(Date.now() / 1000)
+			var tmp = drop + '/.' + stamp + '.json.tmp'
+			fs.writeFileSync(tmp, body)
+			fs.renameSync(tmp, drop + '/' + stamp + '.json')
+		}
 		processData(JSON.parse(body))
 	}
 })
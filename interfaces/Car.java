@@ -18,4 +18,12 @@ public interface Car {
     Velocity getDirection();
 
     Velocity getVelocity();
+
+    // the same without going through Coords and Velocity; the direction
+    // is one of the utils.Direction codes
+    int getX();
+
+    int getY();
+
+    int getDirectionCode();
 }
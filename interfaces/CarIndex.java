@@ -0,0 +1,8 @@
+package interfaces;
+
+//Which car, if any, is on a given square of the map
+public interface CarIndex {
+    // the utils.Direction code of the car at (x, y), or Direction.NONE
+    // if there is no car there
+    int directionAt(int x, int y);
+}
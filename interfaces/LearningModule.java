@@ -4,14 +4,7 @@ import java.io.Serializable;
 
 
 //Contains the logic for our reinforcement learning.
-public interface LearningModule extends Serializable {
-    List<Boolean> updateTrafficLights
-        (
-                RoadMap mapWithCars,
-                List<TrafficLight> trafficLights,
-                int timeRan
-        );
-
+public interface LearningModule extends LightController, Serializable {
     List<Boolean> updateTrafficLightsRandomly(
         RoadMap mapWithCars, List<TrafficLight> trafficLights);
 
@@ -23,6 +16,13 @@ public interface LearningModule extends Serializable {
         List<TrafficLight> lights
     );
 
+    //The same for the first count transitions held in plain arrays, so
+    //callers can reuse them instead of boxing every value
+    void learn
+        (int[] pastStates, boolean[] switches, int[] rewards,
+        int[] newStates, int count
+    );
+
     int reward(int stateCode);
     int reward2(int stateCode);
     int reward3(int stateCode);
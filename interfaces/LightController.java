@@ -0,0 +1,16 @@
+package interfaces;
+import java.util.List;
+
+//Switches the traffic lights each tick; a simulation steps its lights
+//through one of these whether or not anything is learning from them.
+public interface LightController {
+    //Sets switched[i] to whether light i's clock switches this tick,
+    //which is what gets learnt from, rather than the action chosen
+    void updateTrafficLights
+        (
+                RoadMap mapWithCars,
+                List<TrafficLight> trafficLights,
+                int timeRan,
+                boolean[] switched
+        );
+}
@@ -0,0 +1,34 @@
+package interfaces;
+
+import java.io.Serializable;
+
+//Primitive storage for q-values, keyed by state + actionPosition*action.
+//Keys are never negative. Entries that have never been written read as 0.
+public interface QTable extends Serializable {
+    //Returns the q-value stored under key, or 0 if there is none
+    float get(int key);
+
+    //Stores value under key, replacing any previous value, and counts
+    //one more visit to key
+    void put(int key, float value);
+
+    //Number of times key has been written by put()
+    int visits(int key);
+
+    //Stores value and visit count under key as they are given, for
+    //merging and loading tables
+    void set(int key, float value, int visits);
+
+    //Number of keys that have been written at least once
+    int size();
+
+    //Calls visitor once for every key that has been written
+    void forEach(EntryVisitor visitor);
+
+    //An independent copy of this table
+    QTable copy();
+
+    interface EntryVisitor {
+        void visit(int key, float value, int visits);
+    }
+}
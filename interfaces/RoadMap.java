@@ -22,15 +22,32 @@ public interface RoadMap {
     //add cars from the given list onto the map
     void addCars(List<Car> cars);
 
+    //add a single car at the specified coord
+    void addCar(Coords coords);
+
+    void addCar(int x, int y);
+
+    //remove the car at the specified coord, if there is one
+    void removeCar(Coords coords);
+
+    void removeCar(int x, int y);
+
     //returns true if the next unoccupied square in the direction of
     //'direction' from the position 'start' is a traffic light
     boolean nextNonCarSquareIsTrafficLight(Coords start, Velocity direction, TrafficLight trafficLight);
 
+    //direction is one of the utils.Direction codes
+    boolean nextNonCarSquareIsTrafficLight(int x, int y, int direction, TrafficLight trafficLight);
+
     //Returns true if there is a car at the specified coord
     boolean carAt(Coords coords);
 
+    boolean carAt(int x, int y);
+
     //Returns true if there is a road at the specified coord
     boolean roadAt(Coords coords);
+
+    boolean roadAt(int x, int y);
     
     //This is not a hashcode, a hashcode is a code returned by an object
     //to uniquely represent itself and does not take parameters
@@ -44,10 +61,19 @@ public interface RoadMap {
 	// Instead of storing the closet car position for each road, it counts how many are stopped on each road
 	// And also if cars can move across a road
 	int stateCode3(TrafficLight t, List<Car> cars);	
+
+	// The same, looking up the car at the front of each road in an index
+	// instead of a list
+	int stateCode3(TrafficLight t, CarIndex cars);
 	
     //returns true if there is room for a car at p to cross the intersection in a direction
     //calculates by counting blank squares thirteen tiles from position
     boolean roomToCrossIntersection(Coords position, Velocity direction, TrafficLight l);
+
+    boolean roomToCrossIntersection(int x, int y, int direction, TrafficLight l);
     
     TrafficLight getClosestTrafficLight(Car car, List<TrafficLight> trafficLights);
+
+    //the same for a car at (x, y) heading in direction
+    TrafficLight getClosestTrafficLight(int x, int y, int direction, List<TrafficLight> trafficLights);
 }
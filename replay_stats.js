@@ -0,0 +1,40 @@
+//Stands in for the HERE API when Main is watching a drop directory
+//(java Main live/): copies saved snapshots into it one at a time, named
+//after the time they are dropped. Each is written under a temporary name
+//and renamed into place, so Main never reads half a file.
+//
+//	$ node replay_stats.js [snapshots] [drop directory] [seconds between]
+var fs = require('fs')
+
+var from = process.argv[2] || './wednesday/'
+var to = process.argv[3] || './live/'
+var seconds = parseFloat(process.argv[4] || '10')
+
+if (!fs.existsSync(to)) {
+	fs.mkdirSync(to)
+}
+var files = fs.readdirSync(from).filter(function(file) {
+	return /^[0-9]+\.json$/.test(file)
+}).sort(function(a, b) {
+	return parseInt(a) - parseInt(b)
+})
+
+var next = 0
+var last = 0
+
+function drop() {
+	if (next == files.length) {
+		return
+	}
+	// Snapshots must be newer than the last one to be picked up
+	var stamp = Math.max(Math.floor(Date.now() / 1000), last + 1)
+	last = stamp
+	var tmp = to + '/.' + stamp + '.json.tmp'
+	fs.writeFileSync(tmp, fs.readFileSync(from + '/' + files[next]))
+	fs.renameSync(tmp, to + '/' + stamp + '.json')
+	console.log('dropped ' + files[next] + ' as ' + stamp + '.json')
+	next++
+	setTimeout(drop, seconds * 1000)
+}
+
+drop()
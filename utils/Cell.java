@@ -0,0 +1,27 @@
+package utils;
+
+
+//A square of the map packed into one int - x in the high 16 bits, y in
+//the low 16 - for code that stores or passes squares without a Coords.
+//Both halves are signed, so squares just off the map still pack.
+public final class Cell {
+
+    private Cell() {
+    }
+
+    public static int of(int x, int y) {
+        return (x << 16) | (y & 0xffff);
+    }
+
+    public static int of(Coords coords) {
+        return of(coords.getX(), coords.getY());
+    }
+
+    public static int x(int cell) {
+        return cell >> 16;
+    }
+
+    public static int y(int cell) {
+        return (short) cell;
+    }
+}
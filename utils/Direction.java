@@ -0,0 +1,44 @@
+package utils;
+
+
+//Directions of travel as plain ints, for code that passes them around
+//without a Velocity: RIGHT, LEFT, DOWN and UP (y grows down the map), or
+//NONE for anything that is not one square along one axis.
+public final class Direction {
+    public static final int RIGHT = 0;
+    public static final int LEFT = 1;
+    public static final int DOWN = 2;
+    public static final int UP = 3;
+    public static final int NONE = -1;
+
+    //indexed by direction + 1, so NONE stands still
+    private static final int[] DX = { 0, 1, -1, 0, 0 };
+    private static final int[] DY = { 0, 0, 0, 1, -1 };
+
+    private Direction() {
+    }
+
+    public static int of(int dx, int dy) {
+        return
+            dy == 0 ? dx == 1 ? RIGHT : dx == -1 ? LEFT : NONE :
+            dx == 0 ? dy == 1 ? DOWN : dy == -1 ? UP : NONE :
+                NONE;
+    }
+
+    public static int of(Velocity velocity) {
+        return of(velocity.getXSpeed(), velocity.getYSpeed());
+    }
+
+    public static int dx(int direction) {
+        return DX[direction + 1];
+    }
+
+    public static int dy(int direction) {
+        return DY[direction + 1];
+    }
+
+    //true for LEFT and RIGHT
+    public static boolean horizontal(int direction) {
+        return direction == RIGHT || direction == LEFT;
+    }
+}
@@ -0,0 +1,448 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+//Pull parser for UTF-8 JSON read straight off a stream, one token at a
+//time, so a document is never held in memory as a whole. Callers walk
+//the structure with beginObject/nextName/.../endObject and skipValue()
+//everything they are not interested in; skipped strings and numbers are
+//scanned over without being decoded.
+public class JsonReader implements Closeable {
+    //what peek() returns
+    public static final int BEGIN_ARRAY = 0;
+    public static final int END_ARRAY = 1;
+    public static final int BEGIN_OBJECT = 2;
+    public static final int END_OBJECT = 3;
+    public static final int NAME = 4;
+    public static final int STRING = 5;
+    public static final int NUMBER = 6;
+    public static final int BOOLEAN = 7;
+    public static final int NULL = 8;
+    public static final int END_DOCUMENT = 9;
+
+    private static final int NONE = -1;
+
+    //what is expected next inside each open array or object
+    private static final int EMPTY_ARRAY = 0;
+    private static final int NONEMPTY_ARRAY = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_DOCUMENT = 5;
+    private static final int NONEMPTY_DOCUMENT = 6;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int pos;
+    private int limit;
+    //bytes consumed before the start of buffer, for error messages
+    private long offset;
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private int peeked = NONE;
+
+    //the text of the last string, name or number token read
+    private byte[] text = new byte[64];
+    private int textLength;
+
+    public JsonReader(InputStream in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    //The kind of the next token, without consuming it
+    public int peek() throws IOException {
+        if (peeked == NONE) {
+            peeked = advance();
+        }
+        return peeked;
+    }
+
+    //Whether the current array or object has another element
+    public boolean hasNext() throws IOException {
+        int token = peek();
+        return token != END_ARRAY && token != END_OBJECT
+                && token != END_DOCUMENT;
+    }
+
+    public void beginArray() throws IOException {
+        expect(BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(END_ARRAY);
+        depth--;
+    }
+
+    public void beginObject() throws IOException {
+        expect(BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(END_OBJECT);
+        depth--;
+    }
+
+    public String nextName() throws IOException {
+        expect(NAME);
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    public String nextString() throws IOException {
+        int token = peek();
+        if (token != STRING && token != NUMBER) {
+            throw error("expected a string");
+        }
+        peeked = NONE;
+        return new String(text, 0, textLength, StandardCharsets.UTF_8);
+    }
+
+    public double nextDouble() throws IOException {
+        int token = peek();
+        if (token != NUMBER && token != STRING) {
+            throw error("expected a number");
+        }
+        peeked = NONE;
+        String s = new String(text, 0, textLength, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + s);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        double value = nextDouble();
+        int result = (int) value;
+        if (result != value) {
+            throw error("expected an int, got " + value);
+        }
+        return result;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(BOOLEAN);
+        return text[0] == 't';
+    }
+
+    public void nextNull() throws IOException {
+        expect(NULL);
+    }
+
+    //Consumes the next value, or the next name and its value, including
+    //everything nested inside it
+    public void skipValue() throws IOException {
+        int open = 0;
+        do {
+            int token = peek();
+            peeked = NONE;
+            if (token == BEGIN_ARRAY) {
+                push(EMPTY_ARRAY);
+                open++;
+            } else if (token == BEGIN_OBJECT) {
+                push(EMPTY_OBJECT);
+                open++;
+            } else if (token == END_ARRAY || token == END_OBJECT) {
+                depth--;
+                open--;
+            } else if (token == END_DOCUMENT) {
+                throw error("unexpected end of document");
+            } else if (token == NAME && open == 0) {
+                //skip the name's value as well
+                skipValue();
+            }
+        } while (open > 0);
+    }
+
+    private void expect(int token) throws IOException {
+        if (peek() != token) {
+            throw error("expected " + name(token) + " but was "
+                    + name(peeked));
+        }
+        peeked = NONE;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            int[] grown = new int[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = scope;
+    }
+
+    //Reads separators and the next token, updating the scope it is in
+    private int advance() throws IOException {
+        int scope = stack[depth - 1];
+        int c;
+        if (scope == EMPTY_ARRAY || scope == NONEMPTY_ARRAY) {
+            c = nextNonSpace();
+            if (c == ']') {
+                return END_ARRAY;
+            }
+            if (scope == NONEMPTY_ARRAY) {
+                if (c != ',') {
+                    throw error("expected ',' or ']'");
+                }
+                c = nextNonSpace();
+            }
+            stack[depth - 1] = NONEMPTY_ARRAY;
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            c = nextNonSpace();
+            if (c == '}') {
+                return END_OBJECT;
+            }
+            if (scope == NONEMPTY_OBJECT) {
+                if (c != ',') {
+                    throw error("expected ',' or '}'");
+                }
+                c = nextNonSpace();
+            }
+            if (c != '"') {
+                throw error("expected a name");
+            }
+            readString();
+            stack[depth - 1] = DANGLING_NAME;
+            return NAME;
+        } else if (scope == DANGLING_NAME) {
+            if (nextNonSpace() != ':') {
+                throw error("expected ':'");
+            }
+            c = nextNonSpace();
+            stack[depth - 1] = NONEMPTY_OBJECT;
+        } else if (scope == EMPTY_DOCUMENT) {
+            c = nextNonSpace();
+            stack[depth - 1] = NONEMPTY_DOCUMENT;
+        } else {
+            if (nextNonSpace() != -1) {
+                throw error("trailing data after the document");
+            }
+            return END_DOCUMENT;
+        }
+
+        switch (c) {
+            case '[':
+                return BEGIN_ARRAY;
+            case '{':
+                return BEGIN_OBJECT;
+            case '"':
+                readString();
+                return STRING;
+            case 't':
+                readLiteral("true");
+                return BOOLEAN;
+            case 'f':
+                readLiteral("false");
+                return BOOLEAN;
+            case 'n':
+                readLiteral("null");
+                return NULL;
+            case -1:
+                throw error("unexpected end of document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    readNumber(c);
+                    return NUMBER;
+                }
+                throw error("unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private int nextNonSpace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    private void append(int b) {
+        if (textLength == text.length) {
+            byte[] grown = new byte[textLength * 2];
+            System.arraycopy(text, 0, grown, 0, textLength);
+            text = grown;
+        }
+        text[textLength++] = (byte) b;
+    }
+
+    //Reads a string whose opening quote has been consumed into text as
+    //UTF-8, resolving escapes
+    private void readString() throws IOException {
+        textLength = 0;
+        while (true) {
+            //copy plain runs straight out of the buffer
+            int start = pos;
+            while (pos < limit) {
+                byte b = buffer[pos];
+                if (b == '"' || b == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            for (int i = start; i < pos; i++) {
+                append(buffer[i]);
+            }
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            } else if (c == -1) {
+                throw error("unterminated string");
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                append(c);
+                return;
+            case 'b':
+                append('\b');
+                return;
+            case 'f':
+                append('\f');
+                return;
+            case 'n':
+                append('\n');
+                return;
+            case 'r':
+                append('\r');
+                return;
+            case 't':
+                append('\t');
+                return;
+            case 'u':
+                break;
+            default:
+                throw error("bad escape");
+        }
+        int code = readHex();
+        if (code >= 0xD800 && code < 0xDC00) {
+            //a surrogate pair is written as two escapes
+            if (read() != '\\' || read() != 'u') {
+                throw error("unpaired surrogate");
+            }
+            code = 0x10000 + ((code - 0xD800) << 10) + (readHex() - 0xDC00);
+        }
+        if (code < 0x80) {
+            append(code);
+        } else if (code < 0x800) {
+            append(0xC0 | code >> 6);
+            append(0x80 | code & 0x3F);
+        } else if (code < 0x10000) {
+            append(0xE0 | code >> 12);
+            append(0x80 | code >> 6 & 0x3F);
+            append(0x80 | code & 0x3F);
+        } else {
+            append(0xF0 | code >> 18);
+            append(0x80 | code >> 12 & 0x3F);
+            append(0x80 | code >> 6 & 0x3F);
+            append(0x80 | code & 0x3F);
+        }
+    }
+
+    private int readHex() throws IOException {
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("bad \\u escape");
+            }
+            code = code << 4 | digit;
+        }
+        return code;
+    }
+
+    private void readNumber(int first) throws IOException {
+        textLength = 0;
+        append(first);
+        while (true) {
+            if (pos == limit && !fill()) {
+                return;
+            }
+            int c = buffer[pos];
+            if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E'
+                    || c == '+' || c == '-') {
+                append(c);
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void readLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("expected " + literal);
+            }
+        }
+        textLength = 0;
+        append(literal.charAt(0));
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at byte " + (offset + pos));
+    }
+
+    private static String name(int token) {
+        switch (token) {
+            case BEGIN_ARRAY:
+                return "'['";
+            case END_ARRAY:
+                return "']'";
+            case BEGIN_OBJECT:
+                return "'{'";
+            case END_OBJECT:
+                return "'}'";
+            case NAME:
+                return "a name";
+            case STRING:
+                return "a string";
+            case NUMBER:
+                return "a number";
+            case BOOLEAN:
+                return "a boolean";
+            case NULL:
+                return "null";
+            default:
+                return "the end of the document";
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package utils;
+
+import java.io.Serializable;
+
+//Small seedable random number stream (the SplitMix64 generator, the same
+//one behind java.util.SplittableRandom). Each simulation owns one, so
+//replicas running on different threads never share or contend on a
+//generator, and the whole state is one long that can be saved and
+//restored.
+public class Rng implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public Rng(long seed) {
+        this.state = seed;
+    }
+
+    //Seeded from the clock, for runs that need not be reproducible
+    public Rng() {
+        this(mix(System.nanoTime()));
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        return mix(state += GAMMA);
+    }
+
+    //uniform in [0, 1)
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    //uniform in [0, 1)
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    //uniform in [0, bound)
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 33) * bound) >>> 31);
+    }
+
+    //A new stream, statistically independent of this one
+    public Rng split() {
+        return new Rng(nextLong());
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}